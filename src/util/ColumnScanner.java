@@ -0,0 +1,115 @@
+package util;
+
+/*
+ * Finds the whitespace-separated columns of a corpus line without
+ * splitting it, so only the columns actually asked for are turned into
+ * Strings (or ints). A scanner is reused line after line and is not thread-safe.
+ */
+public class ColumnScanner {
+
+	private CharSequence line;
+	private int[] starts = new int[32];
+	private int[] ends = new int[32];
+	private int columnCount;
+
+	public ColumnScanner reset(CharSequence line){
+		return reset(line, 0, line.length());
+	}
+
+	/*
+	 * Scans the part of line between start and end.
+	 */
+	public ColumnScanner reset(CharSequence line, int start, int end){
+		this.line = line;
+		columnCount = 0;
+
+		int i = start;
+		while (i < end){
+			while (i < end && isWhitespace(line.charAt(i)))
+				i++;
+			if (i == end)
+				break;
+
+			if (columnCount == starts.length){
+				starts = grow(starts);
+				ends = grow(ends);
+			}
+			starts[columnCount] = i;
+			while (i < end && !isWhitespace(line.charAt(i)))
+				i++;
+			ends[columnCount] = i;
+			columnCount++;
+		}
+		return this;
+	}
+
+	/*
+	 * Same characters as \s in the regular expressions the corpus used to be split with.
+	 */
+	private static boolean isWhitespace(char c){
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	private static int[] grow(int[] a){
+		int[] grown = new int[a.length * 2];
+		System.arraycopy(a, 0, grown, 0, a.length);
+		return grown;
+	}
+
+	public int columnCount(){
+		return columnCount;
+	}
+
+	public String column(int num){
+		if (num >= columnCount)
+			return "";
+		return line.subSequence(starts[num], ends[num]).toString();
+	}
+
+	/*
+	 * Returns the canonical copy of the column from the given vocabulary cache.
+	 */
+	public String column(int num, Vocabulary.Cache vocabulary){
+		if (num >= columnCount)
+			return "";
+		return vocabulary.intern(line, starts[num], ends[num]);
+	}
+
+	/*
+	 * Parses an integer column in place, without creating a String.
+	 */
+	public int intColumn(int num){
+		if (num >= columnCount)
+			throw new NumberFormatException("missing column " + num);
+
+		int i = starts[num];
+		int end = ends[num];
+		boolean negative = line.charAt(i) == '-';
+		if (negative || line.charAt(i) == '+')
+			i++;
+		if (i == end)
+			throw new NumberFormatException(column(num));
+
+		int value = 0;
+		for (; i < end; i++){
+			int digit = line.charAt(i) - '0';
+			if (digit < 0 || digit > 9)
+				throw new NumberFormatException(column(num));
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	public boolean columnEquals(int num, String s){
+		if (num >= columnCount)
+			return false;
+		int start = starts[num];
+		if (ends[num] - start != s.length())
+			return false;
+		for (int i = 0; i < s.length(); i++)
+			if (line.charAt(start + i) != s.charAt(i))
+				return false;
+		return true;
+	}
+
+}
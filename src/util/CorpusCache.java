@@ -0,0 +1,363 @@
+package util;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/*
+ * Pre-tokenized binary copy of a corpus, so training and evaluation runs
+ * don't parse the same text files over and over.
+ *
+ * Layout (big-endian):
+ *   magic, version
+ *   vocabulary tables for form, lemma, pposs, deprel, predicate role and argument label:
+ *     count, then the strings
+ *   sentence count S, token count T, argument count A
+ *   int[S] sentence lengths
+ *   int[T] index, form, lemma, pposs, parent, deprel, predicate role (one column after another)
+ *   int[T + 1] argument offsets, int[A] predicate number, int[A] label
+ *
+ * The argument columns only hold the labels that aren't "_".
+ * A cache is created once with
+ *   java util.CorpusCache train.closed train.closed.bin
+ * after which the .bin path can be given anywhere a corpus path is expected.
+ */
+public class CorpusCache {
+
+	public static final int MAGIC = 0x53524c43;	//"SRLC"
+	public static final int VERSION = 1;
+
+	private static final int FORM = 0;
+	private static final int LEMMA = 1;
+	private static final int PPOSS = 2;
+	private static final int DEPREL = 3;
+	private static final int PREDICATE = 4;
+	private static final int LABEL = 5;
+	private static final int VOCABULARIES = 6;
+
+	private static final int INDEX_COLUMN = 0;
+	private static final int FORM_COLUMN = 1;
+	private static final int LEMMA_COLUMN = 2;
+	private static final int PPOSS_COLUMN = 3;
+	private static final int PARENT_COLUMN = 4;
+	private static final int DEPREL_COLUMN = 5;
+	private static final int PREDICATE_COLUMN = 6;
+	private static final int TOKEN_COLUMNS = 7;
+
+	public static void main(String[] args) throws IOException{
+		if (args.length != 2){
+			System.err.println("usage: CorpusCache <corpus> <cache>");
+			return;
+		}
+		write(args[0], args[1]);
+	}
+
+	/*
+	 * Whether the file starts like a corpus cache.
+	 */
+	public static boolean isCache(String loc){
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(loc));
+			return in.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (in != null)
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+		}
+	}
+
+	public static void write(String corpusLoc, String cacheLoc) throws IOException{
+		Vocabulary[] vocabularies = new Vocabulary[VOCABULARIES];
+		for (int i = 0; i < VOCABULARIES; i++)
+			vocabularies[i] = new Vocabulary();
+
+		IntList sentenceLengths = new IntList();
+		IntList[] columns = new IntList[TOKEN_COLUMNS];
+		for (int i = 0; i < TOKEN_COLUMNS; i++)
+			columns[i] = new IntList();
+		IntList argumentOffsets = new IntList();
+		IntList argumentPredicates = new IntList();
+		IntList argumentLabels = new IntList();
+
+		argumentOffsets.add(0);
+		CorpusUtils.SentenceReader<TokenData> reader = CorpusUtils.sentenceData(corpusLoc).iterator();
+		try {
+			while (reader.hasNext()){
+				List<TokenData> sentence = reader.next();
+				sentenceLengths.add(sentence.size());
+				for (TokenData token : sentence){
+					columns[INDEX_COLUMN].add(token.sentenceIndex);
+					columns[FORM_COLUMN].add(vocabularies[FORM].indexOf(token.splitForm));
+					columns[LEMMA_COLUMN].add(vocabularies[LEMMA].indexOf(token.splitLemma));
+					columns[PPOSS_COLUMN].add(vocabularies[PPOSS].indexOf(token.pposs));
+					columns[PARENT_COLUMN].add(token.parentIndex);
+					columns[DEPREL_COLUMN].add(vocabularies[DEPREL].indexOf(token.deprel));
+					columns[PREDICATE_COLUMN].add(vocabularies[PREDICATE].indexOf(token.predicateRole));
+
+					for (int predicateNum = 0; predicateNum < token.arguments.length; predicateNum++){
+						if (!token.arguments[predicateNum].equals("_")){
+							argumentPredicates.add(predicateNum);
+							argumentLabels.add(vocabularies[LABEL].indexOf(token.arguments[predicateNum]));
+						}
+					}
+					argumentOffsets.add(argumentLabels.size());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheLoc)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			for (Vocabulary vocabulary : vocabularies){
+				out.writeInt(vocabulary.size());
+				for (int i = 0; i < vocabulary.size(); i++)
+					out.writeUTF(vocabulary.get(i));
+			}
+
+			out.writeInt(sentenceLengths.size());
+			out.writeInt(columns[0].size());
+			out.writeInt(argumentLabels.size());
+			sentenceLengths.writeTo(out);
+			for (IntList column : columns)
+				column.writeTo(out);
+			argumentOffsets.writeTo(out);
+			argumentPredicates.writeTo(out);
+			argumentLabels.writeTo(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/*
+	 * Memory-maps a cache and hands out its sentences in order.
+	 * The vocabularies are read through the channel and every column is mapped on its own,
+	 * in pieces of at most COLUMN_PIECE ints, so caches larger than one mapping (2 GB) work.
+	 * Strings come from the vocabulary tables, so no per-token strings are created;
+	 * pposs, deprel and labels are the same canonical copies the text reader returns.
+	 */
+	public static class Reader implements Iterator<List<TokenData>>, Closeable {
+
+		private final String[][] vocabularies = new String[VOCABULARIES][];
+
+		private final int sentenceCount;
+		private final IntColumn sentenceLengths;
+		private final IntColumn[] columns = new IntColumn[TOKEN_COLUMNS];
+		private final IntColumn argumentOffsets;
+		private final IntColumn argumentPredicates;
+		private final IntColumn argumentLabels;
+
+		private int nextSentence = 0;
+		private int nextToken = 0;
+
+		public Reader(String cacheLoc) throws IOException{
+			RandomAccessFile file = new RandomAccessFile(cacheLoc, "r");
+			try {
+				FileChannel channel = file.getChannel();
+				ChannelInputStream headerStream = new ChannelInputStream(channel);
+				DataInputStream header = new DataInputStream(headerStream);
+
+				if (header.readInt() != MAGIC)
+					throw new IOException(cacheLoc + " is not a corpus cache");
+				int version = header.readInt();
+				if (version != VERSION)
+					throw new IOException("unsupported corpus cache version " + version);
+
+				for (int v = 0; v < VOCABULARIES; v++){
+					String[] strings = new String[header.readInt()];
+					for (int i = 0; i < strings.length; i++)
+						strings[i] = header.readUTF();
+					vocabularies[v] = strings;
+				}
+				intern(vocabularies[PPOSS], CorpusUtils.PPOSS_VOCABULARY);
+				intern(vocabularies[DEPREL], CorpusUtils.DEPREL_VOCABULARY);
+				intern(vocabularies[LABEL], CorpusUtils.LABEL_VOCABULARY);
+
+				sentenceCount = header.readInt();
+				int tokenCount = header.readInt();
+				int argumentCount = header.readInt();
+
+				long offset = headerStream.position();
+				sentenceLengths = new IntColumn(channel, offset, sentenceCount);
+				offset += 4L * sentenceCount;
+				for (int i = 0; i < TOKEN_COLUMNS; i++){
+					columns[i] = new IntColumn(channel, offset, tokenCount);
+					offset += 4L * tokenCount;
+				}
+				argumentOffsets = new IntColumn(channel, offset, tokenCount + 1);
+				offset += 4L * (tokenCount + 1);
+				argumentPredicates = new IntColumn(channel, offset, argumentCount);
+				offset += 4L * argumentCount;
+				argumentLabels = new IntColumn(channel, offset, argumentCount);
+			} finally {
+				file.close();	//the mappings stay valid after the file is closed
+			}
+		}
+
+		private static void intern(String[] strings, Vocabulary vocabulary){
+			for (int i = 0; i < strings.length; i++)
+				strings[i] = vocabulary.intern(strings[i]);
+		}
+
+		public boolean hasNext(){
+			return nextSentence < sentenceCount;
+		}
+
+		public List<TokenData> next(){
+			if (!hasNext())
+				throw new NoSuchElementException();
+
+			int length = sentenceLengths.get(nextSentence++);
+			int predicateCount = 0;
+			for (int t = nextToken; t < nextToken + length; t++)
+				if (!vocabularies[PREDICATE][columns[PREDICATE_COLUMN].get(t)].equals("_"))
+					predicateCount++;
+
+			List<TokenData> sentence = new ArrayList<TokenData>(length);
+			for (int t = nextToken; t < nextToken + length; t++){
+				String[] arguments = new String[predicateCount];
+				Arrays.fill(arguments, "_");
+				for (int a = argumentOffsets.get(t); a < argumentOffsets.get(t + 1); a++)
+					arguments[argumentPredicates.get(a)] = vocabularies[LABEL][argumentLabels.get(a)];
+
+				sentence.add(new TokenData(
+						columns[INDEX_COLUMN].get(t),
+						vocabularies[FORM][columns[FORM_COLUMN].get(t)],
+						vocabularies[LEMMA][columns[LEMMA_COLUMN].get(t)],
+						vocabularies[PPOSS][columns[PPOSS_COLUMN].get(t)],
+						columns[PARENT_COLUMN].get(t),
+						vocabularies[DEPREL][columns[DEPREL_COLUMN].get(t)],
+						vocabularies[PREDICATE][columns[PREDICATE_COLUMN].get(t)],
+						arguments));
+			}
+			nextToken += length;
+			return sentence;
+		}
+
+		public void remove(){
+			throw new UnsupportedOperationException();
+		}
+
+		public void close(){
+			nextSentence = sentenceCount;
+		}
+	}
+
+	/*
+	 * One int column of a cache, mapped in pieces of COLUMN_PIECE ints
+	 * since a single mapping can't be larger than 2 GB.
+	 */
+	private static class IntColumn {
+
+		private static final int PIECE_BITS = 28;
+		private static final int COLUMN_PIECE = 1 << PIECE_BITS;	//1 GB of ints
+
+		private final IntBuffer[] pieces;
+
+		IntColumn(FileChannel channel, long offset, int length) throws IOException{
+			if (offset + 4L * length > channel.size())
+				throw new IOException("truncated corpus cache");
+			pieces = new IntBuffer[(int) ((length + (long) COLUMN_PIECE - 1) >> PIECE_BITS)];
+			for (int p = 0; p < pieces.length; p++){
+				int pieceLength = Math.min(COLUMN_PIECE, length - p * COLUMN_PIECE);
+				pieces[p] = channel.map(FileChannel.MapMode.READ_ONLY,
+						offset + 4L * p * COLUMN_PIECE, 4L * pieceLength).asIntBuffer();
+			}
+		}
+
+		int get(int i){
+			return pieces[i >>> PIECE_BITS].get(i & (COLUMN_PIECE - 1));
+		}
+	}
+
+	/*
+	 * Reads the header and vocabulary tables through DataInputStream straight from
+	 * the channel, and knows the file position of the first byte it hasn't handed out.
+	 */
+	private static class ChannelInputStream extends java.io.InputStream {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		private long bufferEnd = 0;	//file position just past the buffered bytes
+
+		ChannelInputStream(FileChannel channel){
+			this.channel = channel;
+			buffer.limit(0);
+		}
+
+		long position(){
+			return bufferEnd - buffer.remaining();
+		}
+
+		private boolean fill() throws IOException{
+			if (buffer.hasRemaining())
+				return true;
+			buffer.clear();
+			int read = channel.read(buffer, bufferEnd);
+			buffer.flip();
+			if (read <= 0)
+				return false;
+			bufferEnd += read;
+			return true;
+		}
+
+		public int read() throws IOException{
+			if (!fill())
+				return -1;
+			return buffer.get() & 0xff;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException{
+			if (!fill())
+				return -1;
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+			return len;
+		}
+	}
+
+	/*
+	 * Growable int array used while collecting the columns.
+	 */
+	private static class IntList {
+
+		private int[] values = new int[1024];
+		private int size = 0;
+
+		void add(int value){
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+
+		int size(){
+			return size;
+		}
+
+		void writeTo(DataOutputStream out) throws IOException{
+			for (int i = 0; i < size; i++)
+				out.writeInt(values[i]);
+		}
+	}
+
+}
@@ -1,13 +1,15 @@
 package util;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-
-import edu.stanford.nlp.util.ErasureUtils;
+import java.util.NoSuchElementException;
 
 public class CorpusUtils {
 	
@@ -20,28 +22,224 @@ public class CorpusUtils {
 	public static final int PREDICATE_COLUMN = 10;
 	public static final int ARGS_START_COLUMN = 11;
 	
-	public static List<List<String[]>> sentenceDataFromCorpus(String corpusLoc) throws IOException{
-		List<List<String[]>> sentences = new ArrayList<List<String[]>>(); 
-		
-		String strLine;
-		FileInputStream fstream = new FileInputStream(corpusLoc);
-		BufferedReader br = new BufferedReader(new InputStreamReader(fstream));
-
-		ArrayList<String[]> sentenceTokens = new ArrayList<String[]>();
-		
-		while ((strLine = br.readLine()) != null) {
-			if (strLine.equals("")){	//sentence is over, enter sentence data into dataset
-				List<String[]> sentenceTokensClone = ErasureUtils.uncheckedCast(sentenceTokens.clone());
-				sentences.add(sentenceTokensClone);
-				sentenceTokens.clear();
+	public static final long PARALLEL_READ_THRESHOLD = 2 * MappedCorpusReader.CHUNK_SIZE;
+	
+	/*
+	 * The vocabularies Sentence columns are ids into. They are shared by every
+	 * corpus read in the process and only ever grow, so ids stay valid for as
+	 * long as the process runs. While tags, deprels and labels stay few, the
+	 * form and lemma vocabularies keep each distinct word read: streaming a
+	 * corpus holds only one sentence in memory, but a process that reads many
+	 * unrelated corpora keeps all their words until it exits.
+	 */
+	public static final Vocabulary FORM_VOCABULARY = new Vocabulary();
+	public static final Vocabulary LEMMA_VOCABULARY = new Vocabulary();
+	public static final Vocabulary PPOSS_VOCABULARY = new Vocabulary();
+	public static final Vocabulary DEPREL_VOCABULARY = new Vocabulary();
+	public static final Vocabulary PREDICATE_VOCABULARY = new Vocabulary();
+	public static final Vocabulary LABEL_VOCABULARY = new Vocabulary();
+	
+	/*
+	 * Turns the raw column data of one sentence into whatever
+	 * token representation the caller works with.
+	 */
+	public interface SentenceConverter<T> {
+		List<T> convert(List<TokenData> sentenceData);
+	}
+
+	/*
+	 * Reads the corpus one sentence at a time, so only the
+	 * sentence currently being read is held in memory.
+	 * The underlying file is closed once the last sentence has been read.
+	 */
+	public static class SentenceIterator implements Iterator<List<TokenData>>, Closeable {
+
+		private final BufferedReader br;
+		private final TokenData.Parser parser = new TokenData.Parser();
+		private List<TokenData> nextSentence;
+		private boolean closed = false;
+
+		public SentenceIterator(String corpusLoc) throws IOException{
+			br = new BufferedReader(new InputStreamReader(new FileInputStream(corpusLoc)));
+		}
+
+		public boolean hasNext(){
+			if (nextSentence == null && !closed){
+				try {
+					nextSentence = readSentence();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			return nextSentence != null;
+		}
+
+		public List<TokenData> next(){
+			if (!hasNext())
+				throw new NoSuchElementException();
+			List<TokenData> sentence = nextSentence;
+			nextSentence = null;
+			return sentence;
+		}
+
+		public void remove(){
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() throws IOException{
+			closed = true;
+			br.close();
+		}
+
+		/*
+		 * Returns the lines up to the next blank line, or null at the end of the file.
+		 * Tokens after the last blank line are not a complete sentence and are dropped.
+		 */
+		private List<TokenData> readSentence() throws IOException{
+			List<TokenData> sentenceTokens = new ArrayList<TokenData>();
+			String strLine;
+			while ((strLine = br.readLine()) != null) {
+				if (strLine.equals(""))	//sentence is over
+					return sentenceTokens;
+				sentenceTokens.add(parser.parse(strLine));	//is a token in the same sentence
+			}
+			close();
+			return null;
+		}
+	}
+
+	/*
+	 * An iterator over the sentences of a corpus, which holds the corpus open
+	 * (a file, a mapping, reader threads) until it has been read to the end or
+	 * until reading or converting a sentence throws. A caller that may stop
+	 * before the end closes it in a finally block.
+	 */
+	public interface SentenceReader<T> extends Iterator<List<T>>, Closeable {
+		void close();
+	}
+
+	/*
+	 * The sentences of a corpus; every call to iterator() reads it again from the start.
+	 */
+	public interface Corpus<T> extends Iterable<List<T>> {
+		SentenceReader<T> iterator();
+	}
+
+	/*
+	 * Iterates over the sentences of a corpus without reading the whole file.
+	 */
+	public static Corpus<TokenData> sentenceData(String corpusLoc){
+		return sentences(corpusLoc, new SentenceConverter<TokenData>(){
+			public List<TokenData> convert(List<TokenData> sentenceData){
+				return sentenceData;
+			}
+		});
+	}
+	
+	/*
+	 * Binary caches written by CorpusCache are read directly.
+	 * Large text corpora are memory-mapped and parsed on all cores;
+	 * small ones (or single-core machines) are not worth starting threads for.
+	 */
+	private static <T> SentenceReader<T> openSentences(String corpusLoc, SentenceConverter<T> converter) throws IOException{
+		if (CorpusCache.isCache(corpusLoc))
+			return converting(new CorpusCache.Reader(corpusLoc), converter);
+		if (new File(corpusLoc).length() >= PARALLEL_READ_THRESHOLD &&
+				Runtime.getRuntime().availableProcessors() > 1)
+			return converting(new MappedCorpusReader(corpusLoc), converter);
+		return converting(new SentenceIterator(corpusLoc), converter);
+	}
+
+	private static <T, R extends Iterator<List<TokenData>> & Closeable> SentenceReader<T> converting(R sentenceData, SentenceConverter<T> converter){
+		return new ConvertingReader<T>(sentenceData, sentenceData, converter);
+	}
+
+	/*
+	 * Same as sentenceData, with every sentence converted to tokens as it is read.
+	 */
+	public static <T> Corpus<T> sentences(final String corpusLoc, final SentenceConverter<T> converter){
+		return new Corpus<T>(){
+			public SentenceReader<T> iterator(){
+				try {
+					return openSentences(corpusLoc, converter);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+	}
+
+	/*
+	 * Converts the sentences of one of the readers above, and closes the
+	 * reader when it runs out or when reading or converting throws.
+	 */
+	private static class ConvertingReader<T> implements SentenceReader<T> {
+
+		private final Iterator<List<TokenData>> sentenceData;
+		private final Closeable source;	//the same reader as sentenceData
+		private final SentenceConverter<T> converter;
+		private boolean closed = false;
+
+		ConvertingReader(Iterator<List<TokenData>> sentenceData, Closeable source, SentenceConverter<T> converter){
+			this.sentenceData = sentenceData;
+			this.source = source;
+			this.converter = converter;
+		}
+
+		public boolean hasNext(){
+			if (closed)
+				return false;
+			boolean hasNext = false;
+			try {
+				hasNext = sentenceData.hasNext();
+			} finally {
+				if (!hasNext)
+					close();
 			}
+			return hasNext;
+		}
 
-			else{ 				//is a token in the same sentence
-				sentenceTokens.add(strLine.split("\\s+"));
+		public List<T> next(){
+			if (!hasNext())
+				throw new NoSuchElementException();
+			boolean converted = false;
+			try {
+				List<T> sentence = converter.convert(sentenceData.next());
+				converted = true;
+				return sentence;
+			} finally {
+				if (!converted)
+					close();
 			}
+		}
 
+		public void remove(){
+			throw new UnsupportedOperationException();
 		}
-		
+
+		public void close(){
+			if (closed)
+				return;
+			closed = true;
+			try {
+				source.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	public static List<List<TokenData>> sentenceDataFromCorpus(String corpusLoc) throws IOException{
+		List<List<TokenData>> sentences = new ArrayList<List<TokenData>>();
+
+		SentenceReader<TokenData> sentenceReader = sentenceData(corpusLoc).iterator();
+		try {
+			while (sentenceReader.hasNext())
+				sentences.add(sentenceReader.next());
+		} finally {
+			sentenceReader.close();
+		}
+
 		return sentences;
 	}
 	
@@ -54,9 +252,6 @@ public class CorpusUtils {
 	 * returns the corresponding characteristic as a string. 
 	 */
 	public static String columnOf(String line, int num){
-		String[] columns = line.split("\\s+");
-		if (columns.length > num)
-			return columns[num];
-		return "";
+		return new ColumnScanner().reset(line).column(num);
 	}
 }
@@ -0,0 +1,237 @@
+package util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * Reads a corpus by memory-mapping it and parsing fixed-size chunks of the
+ * file on all cores. Sentences are still handed out in file order, and only
+ * a bounded number of chunks are parsed ahead of the consumer, so memory
+ * stays proportional to the number of threads rather than to the corpus.
+ *
+ * A chunk owns every sentence whose first line starts inside it, and reads
+ * past its end to finish the last one. Sentences are the lines up to a blank
+ * line, exactly as in CorpusUtils.SentenceIterator: consecutive blank lines
+ * give empty sentences, and lines after the last blank line are dropped.
+ */
+public class MappedCorpusReader implements Iterator<List<TokenData>>, Closeable {
+
+	public static final int CHUNK_SIZE = 8 << 20;
+
+	private static final int WINDOW_SLACK = 1 << 20;	//bytes mapped past the end of a chunk for its last sentence
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long size;
+	private final Charset charset = Charset.defaultCharset();
+
+	private final ExecutorService executor;
+	private final int maxChunksInFlight;
+	private final Deque<Future<List<List<TokenData>>>> pendingChunks = new ArrayDeque<Future<List<List<TokenData>>>>();
+	private long nextChunkStart = 0;
+
+	private Iterator<List<TokenData>> currentChunk = Collections.<List<TokenData>>emptyList().iterator();
+	private boolean closed = false;
+
+	public MappedCorpusReader(String corpusLoc) throws IOException{
+		this(corpusLoc, Runtime.getRuntime().availableProcessors());
+	}
+
+	public MappedCorpusReader(String corpusLoc, int threads) throws IOException{
+		file = new RandomAccessFile(corpusLoc, "r");
+		channel = file.getChannel();
+		size = channel.size();
+
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory(){
+			public Thread newThread(Runnable r){
+				Thread t = new Thread(r, "corpus-reader");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		maxChunksInFlight = 2 * threads;
+		submitChunks();
+	}
+
+	private void submitChunks(){
+		while (pendingChunks.size() < maxChunksInFlight && nextChunkStart < size){
+			final long start = nextChunkStart;
+			final long end = Math.min(size, start + CHUNK_SIZE);
+			pendingChunks.addLast(executor.submit(new Callable<List<List<TokenData>>>(){
+				public List<List<TokenData>> call() throws IOException{
+					return readChunk(start, end);
+				}
+			}));
+			nextChunkStart = end;
+		}
+	}
+
+	public boolean hasNext(){
+		while (!currentChunk.hasNext()){
+			if (pendingChunks.isEmpty()){
+				if (!closed){
+					try {
+						close();
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+				return false;
+			}
+
+			try {
+				currentChunk = pendingChunks.removeFirst().get().iterator();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+			submitChunks();
+		}
+		return true;
+	}
+
+	public List<TokenData> next(){
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return currentChunk.next();
+	}
+
+	public void remove(){
+		throw new UnsupportedOperationException();
+	}
+
+	public void close() throws IOException{
+		closed = true;
+		for (Future<List<List<TokenData>>> chunk : pendingChunks)
+			chunk.cancel(true);
+		pendingChunks.clear();
+		executor.shutdownNow();
+		channel.close();
+		file.close();
+	}
+
+	/*
+	 * Parses the sentences owned by the chunk [start, end).
+	 */
+	private List<List<TokenData>> readChunk(long start, long end) throws IOException{
+		Window window = new Window(Math.max(0, start - 3), end + WINDOW_SLACK);
+
+		long sentenceStart = firstSentenceStart(window, start);
+		long chunkEnd = firstSentenceStart(window, end);	//where the next chunk takes over
+
+		List<List<TokenData>> sentences = new ArrayList<List<TokenData>>();
+		if (chunkEnd <= sentenceStart)
+			return sentences;
+
+		byte[] bytes = new byte[(int) (chunkEnd - sentenceStart)];
+		window.slice(sentenceStart, chunkEnd).get(bytes);	//bulk copy; decoding straight from a mapped buffer is much slower
+		String chars = new String(bytes, charset);
+		TokenData.Parser parser = new TokenData.Parser();
+		List<TokenData> sentenceTokens = new ArrayList<TokenData>();
+
+		int lineStart = 0;
+		int length = chars.length();
+		while (lineStart < length){
+			int lineEnd = chars.indexOf('\n', lineStart);
+			if (lineEnd < 0)
+				lineEnd = length;
+			int next = lineEnd + 1;
+			if (lineEnd > lineStart && chars.charAt(lineEnd - 1) == '\r')
+				lineEnd--;
+
+			if (lineEnd == lineStart){	//sentence is over
+				sentences.add(sentenceTokens);
+				sentenceTokens = new ArrayList<TokenData>();
+			}
+			else
+				sentenceTokens.add(parser.parse(chars, lineStart, lineEnd));
+			lineStart = next;
+		}
+
+		return sentences;	//tokens after the last blank line of the file are dropped
+	}
+
+	/*
+	 * Returns the first position at or after pos where a sentence begins:
+	 * the start of the file, or the line after a blank line.
+	 */
+	private long firstSentenceStart(Window window, long pos) throws IOException{
+		if (pos == 0)
+			return 0;
+
+		long lineStart = pos;
+		while (lineStart < size && window.get(lineStart - 1) != '\n')
+			lineStart++;
+
+		while (lineStart < size && !followsBlankLine(window, lineStart)){
+			lineStart++;
+			while (lineStart < size && window.get(lineStart - 1) != '\n')
+				lineStart++;
+		}
+		return lineStart;
+	}
+
+	/*
+	 * Whether the line starting at lineStart comes right after a blank line.
+	 */
+	private boolean followsBlankLine(Window window, long lineStart) throws IOException{
+		long i = lineStart - 2;
+		if (i >= 0 && window.get(i) == '\r')
+			i--;
+		return i < 0 || window.get(i) == '\n';
+	}
+
+	/*
+	 * A mapped view of part of the file, remapped further along
+	 * if a sentence runs past it.
+	 */
+	private class Window {
+
+		private long base;
+		private MappedByteBuffer buffer;
+
+		Window(long from, long to) throws IOException{
+			map(from, to);
+		}
+
+		private void map(long from, long to) throws IOException{
+			to = Math.min(size, to);
+			base = from;
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+		}
+
+		byte get(long pos) throws IOException{
+			if (pos >= base + buffer.limit())
+				map(base, base + 2L * buffer.limit() + WINDOW_SLACK);
+			return buffer.get((int) (pos - base));
+		}
+
+		ByteBuffer slice(long from, long to){
+			ByteBuffer slice = buffer.duplicate();
+			slice.limit((int) (to - base));
+			slice.position((int) (from - base));
+			return slice;
+		}
+	}
+
+}
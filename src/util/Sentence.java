@@ -0,0 +1,175 @@
+package util;
+
+import java.util.List;
+
+/*
+ * Compact backing store for one sentence: every column is a parallel int
+ * array of vocabulary ids, the dependency tree is a parent array plus
+ * CSR-style children lists, and the gold arguments are CSR lists too.
+ * Tokens built on a Sentence are views that look their neighbors,
+ * children and gold labels up here instead of storing them.
+ */
+public class Sentence {
+
+	private final int length;
+
+	private final int[] formIds;
+	private final int[] lemmaIds;
+	private final int[] ppossIds;
+	private final int[] deprelIds;
+	private final int[] predicateIds;
+	private final int[] parents;
+
+	private final int[] childOffsets;	//children of i are children[childOffsets[i]] up to children[childOffsets[i + 1]]
+	private final int[] children;
+
+	private final int[] argumentOffsets;	//same layout for the gold arguments of each token
+	private final int[] argumentPredicates;	//sentence index of the predicate
+	private final int[] argumentLabelIds;
+
+	private TreeIndex tree;	//built on first use
+
+	public Sentence(List<TokenData> sentenceData){
+		length = sentenceData.size();
+		formIds = new int[length];
+		lemmaIds = new int[length];
+		ppossIds = new int[length];
+		deprelIds = new int[length];
+		predicateIds = new int[length];
+		parents = new int[length];
+
+		int[] predicates = new int[length];	//sentence index of the n-th predicate
+		int predicateCount = 0;
+		int argumentCount = 0;
+		for (int i = 0; i < length; i++){
+			TokenData token = sentenceData.get(i);
+			formIds[i] = CorpusUtils.FORM_VOCABULARY.indexOf(token.splitForm);
+			lemmaIds[i] = CorpusUtils.LEMMA_VOCABULARY.indexOf(token.splitLemma);
+			ppossIds[i] = CorpusUtils.PPOSS_VOCABULARY.indexOf(token.pposs);
+			deprelIds[i] = CorpusUtils.DEPREL_VOCABULARY.indexOf(token.deprel);
+			predicateIds[i] = CorpusUtils.PREDICATE_VOCABULARY.indexOf(token.predicateRole);
+			parents[i] = token.parentIndex;
+
+			if (!token.predicateRole.equals("_"))
+				predicates[predicateCount++] = i;
+			for (String label : token.arguments)
+				if (!label.equals("_"))
+					argumentCount++;
+		}
+
+		childOffsets = new int[length + 1];
+		for (int i = 0; i < length; i++)
+			if (parents[i] >= 0)
+				childOffsets[parents[i] + 1]++;
+		for (int i = 0; i < length; i++)
+			childOffsets[i + 1] += childOffsets[i];
+		children = new int[childOffsets[length]];
+		int[] nextChild = new int[length];
+		for (int i = 0; i < length; i++)	//children end up in sentence order
+			if (parents[i] >= 0)
+				children[childOffsets[parents[i]] + nextChild[parents[i]]++] = i;
+
+		argumentOffsets = new int[length + 1];
+		argumentPredicates = new int[argumentCount];
+		argumentLabelIds = new int[argumentCount];
+		int a = 0;
+		for (int i = 0; i < length; i++){
+			String[] arguments = sentenceData.get(i).arguments;
+			for (int predicateNum = 0; predicateNum < arguments.length; predicateNum++){
+				if (!arguments[predicateNum].equals("_")){
+					if (predicateNum >= predicateCount)
+						throw new IllegalArgumentException("token " + (i + 1) + " has an argument of predicate " + (predicateNum + 1) +
+								", but the sentence has " + predicateCount + " predicates");
+					argumentPredicates[a] = predicates[predicateNum];
+					argumentLabelIds[a] = CorpusUtils.LABEL_VOCABULARY.indexOf(arguments[predicateNum]);
+					a++;
+				}
+			}
+			argumentOffsets[i + 1] = a;
+		}
+	}
+
+	public int size(){
+		return length;
+	}
+
+	public int formId(int i){
+		return formIds[i];
+	}
+
+	public int lemmaId(int i){
+		return lemmaIds[i];
+	}
+
+	public int ppossId(int i){
+		return ppossIds[i];
+	}
+
+	public int deprelId(int i){
+		return deprelIds[i];
+	}
+
+	public String splitForm(int i){
+		return CorpusUtils.FORM_VOCABULARY.get(formIds[i]);
+	}
+
+	public String splitLemma(int i){
+		return CorpusUtils.LEMMA_VOCABULARY.get(lemmaIds[i]);
+	}
+
+	public String pposs(int i){
+		return CorpusUtils.PPOSS_VOCABULARY.get(ppossIds[i]);
+	}
+
+	public String deprel(int i){
+		return CorpusUtils.DEPREL_VOCABULARY.get(deprelIds[i]);
+	}
+
+	public String predicateRole(int i){
+		return CorpusUtils.PREDICATE_VOCABULARY.get(predicateIds[i]);
+	}
+
+	public int parent(int i){
+		return parents[i];
+	}
+
+	/*
+	 * Children of token i are child(k) for k from childrenStart(i) up to childrenEnd(i).
+	 */
+	public int childrenStart(int i){
+		return childOffsets[i];
+	}
+
+	public int childrenEnd(int i){
+		return childOffsets[i + 1];
+	}
+
+	public int child(int k){
+		return children[k];
+	}
+
+	public int childCount(int i){
+		return childOffsets[i + 1] - childOffsets[i];
+	}
+
+	/*
+	 * The precomputed tree queries (depths, ancestors, common ancestors) for this sentence.
+	 */
+	public TreeIndex tree(){
+		if (tree == null)
+			tree = new TreeIndex(this);
+		return tree;
+	}
+
+	/*
+	 * Gold label of token i as an argument of the predicate at sentence index predicate,
+	 * or null if it isn't one.
+	 */
+	public String goldLabel(int i, int predicate){
+		for (int a = argumentOffsets[i]; a < argumentOffsets[i + 1]; a++)
+			if (argumentPredicates[a] == predicate)
+				return CorpusUtils.LABEL_VOCABULARY.get(argumentLabelIds[a]);
+		return null;
+	}
+
+}
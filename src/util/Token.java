@@ -15,6 +15,7 @@ public class Token {
 	public final int sentenceIndex;
 	
 	protected List<? extends Token> sentenceTokens;
+	protected final Sentence sentence;	//null for tokens built from strings
 	
 	public Token(String splitForm, String splitLemma,
 			String pposs, String deprel, String goldPredicateRole,
@@ -28,9 +29,32 @@ public class Token {
 		this.goldPredicateRole = goldPredicateRole;
 		this.sentenceIndex = sentenceIndex;
 		this.sentenceTokens = sentenceTokens;
+		this.sentence = null;
 		
 	}
 	
+	/*
+	 * A view of token sentenceIndex of sentence; the strings are
+	 * the sentence's shared vocabulary entries, not copies.
+	 */
+	public Token(Sentence sentence, int sentenceIndex, List<? extends Token> sentenceTokens){
+		
+		this.splitForm = sentence.splitForm(sentenceIndex);
+		this.splitLemma = sentence.splitLemma(sentenceIndex);
+		this.pposs = sentence.pposs(sentenceIndex);
+		this.deprel = sentence.deprel(sentenceIndex);
+		this.goldPredicateRole = sentence.predicateRole(sentenceIndex);
+		this.parentIndex = sentence.parent(sentenceIndex);
+		this.sentenceIndex = sentenceIndex;
+		this.sentenceTokens = sentenceTokens;
+		this.sentence = sentence;
+		
+	}
+	
+	public Sentence getSentence(){
+		return sentence;
+	}
+	
 	public List<? extends Token> getSentenceTokens(){
 		return Collections.unmodifiableList(sentenceTokens);
 	}
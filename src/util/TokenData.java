@@ -0,0 +1,75 @@
+package util;
+
+/*
+ * The columns of one corpus line that the classifiers use.
+ * Indices are 0-based; the corpus itself counts tokens from 1.
+ */
+public class TokenData {
+
+	public final int sentenceIndex;
+	public final String splitForm;
+	public final String splitLemma;
+	public final String pposs;
+	public final int parentIndex;
+	public final String deprel;
+	public final String predicateRole;
+	public final String[] arguments;	//one label (or "_") per predicate of the sentence
+
+	public TokenData(int sentenceIndex, String splitForm, String splitLemma,
+			String pposs, int parentIndex, String deprel, String predicateRole,
+			String[] arguments){
+		this.sentenceIndex = sentenceIndex;
+		this.splitForm = splitForm;
+		this.splitLemma = splitLemma;
+		this.pposs = pposs;
+		this.parentIndex = parentIndex;
+		this.deprel = deprel;
+		this.predicateRole = predicateRole;
+		this.arguments = arguments;
+	}
+
+	/*
+	 * Turns corpus lines into TokenData, reusing one ColumnScanner and
+	 * interning the small POS/DEPREL/label vocabularies as it goes.
+	 * A parser is not thread-safe; use one per reading thread.
+	 */
+	public static class Parser {
+
+		private static final String[] NO_ARGUMENTS = new String[0];
+
+		private final ColumnScanner scanner = new ColumnScanner();
+		private final Vocabulary.Cache ppossCache = CorpusUtils.PPOSS_VOCABULARY.newCache();
+		private final Vocabulary.Cache deprelCache = CorpusUtils.DEPREL_VOCABULARY.newCache();
+		private final Vocabulary.Cache labelCache = CorpusUtils.LABEL_VOCABULARY.newCache();
+
+		public TokenData parse(CharSequence line){
+			return parse(line, 0, line.length());
+		}
+
+		public TokenData parse(CharSequence line, int start, int end){
+			scanner.reset(line, start, end);
+
+			int argumentCount = scanner.columnCount() - CorpusUtils.ARGS_START_COLUMN;
+			String[] arguments = NO_ARGUMENTS;
+			if (argumentCount > 0){
+				arguments = new String[argumentCount];
+				for (int i = 0; i < argumentCount; i++)
+					arguments[i] = scanner.column(CorpusUtils.ARGS_START_COLUMN + i, labelCache);
+			}
+
+			String predicateRole = scanner.columnEquals(CorpusUtils.PREDICATE_COLUMN, "_") ?
+					"_" : scanner.column(CorpusUtils.PREDICATE_COLUMN);
+
+			return new TokenData(
+					scanner.intColumn(CorpusUtils.INDEX_COLUMN) - 1,	//offset by 1 because array indices are 0-based, not 1-based
+					scanner.column(CorpusUtils.SPLIT_FORM_COLUMN),
+					scanner.column(CorpusUtils.SPLIT_LEMMA_COLUMN),
+					scanner.column(CorpusUtils.PPOSS_COLUMN, ppossCache),
+					scanner.intColumn(CorpusUtils.PARENT_INDEX_COLUMN) - 1,
+					scanner.column(CorpusUtils.DEPREL_COLUMN, deprelCache),
+					predicateRole,
+					arguments);
+		}
+	}
+
+}
@@ -0,0 +1,213 @@
+package util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/*
+ * Precomputed structure of the dependency tree of one sentence, built once
+ * so that tree queries need no walking and no allocation:
+ *   depth and root of every token,
+ *   pre-order numbers and subtree ends, so ancestor tests are two comparisons,
+ *   an Euler tour with a sparse table of its minimum-depth nodes, so the
+ *   lowest common ancestor of two tokens is found in O(1),
+ *   ancestor and descendant sets as BitSets over sentence indices, made on first use.
+ * A sentence with several roots is a forest; tokens in different trees
+ * have no common ancestor. Tokens not reachable from a root (a cycle in a
+ * malformed parse) have no ancestors and no common ancestor with anything.
+ */
+public class TreeIndex {
+
+	private final int[] parents;
+	private final int[] depths;
+	private final int[] roots;	//root of the tree containing each token, -1 if unreachable
+	private final int[] preorder;
+	private final int[] subtreeEnds;	//descendants of i have preorder numbers in [preorder[i], subtreeEnds[i])
+	private final int[] preorderTokens;	//token with each preorder number
+
+	private final int[] firstVisit;	//position of each token's first appearance in the Euler tour
+	private final int[][] minimumDepthNodes;	//minimumDepthNodes[k][p] is the shallowest token in tour[p .. p + 2^k)
+
+	private final BitSet[] ancestorSets;
+	private final BitSet[] descendantSets;
+
+	public TreeIndex(Sentence sentence){
+		this(parentsOf(sentence));
+	}
+
+	/*
+	 * The tree of a sentence given by the parent of each token, -1 for a root.
+	 * The array is kept, not copied; don't modify it afterwards.
+	 */
+	public TreeIndex(int[] parents){
+		int length = parents.length;
+		this.parents = parents;
+		depths = new int[length];
+		roots = new int[length];
+		preorder = new int[length];
+		subtreeEnds = new int[length];
+		preorderTokens = new int[length];
+		firstVisit = new int[length];
+		ancestorSets = new BitSet[length];
+		descendantSets = new BitSet[length];
+		Arrays.fill(roots, -1);
+
+		int[] childOffsets = new int[length + 1];	//children of i are children[childOffsets[i]] up to children[childOffsets[i + 1]]
+		for (int i = 0; i < length; i++)
+			if (parents[i] >= 0)
+				childOffsets[parents[i] + 1]++;
+		for (int i = 0; i < length; i++)
+			childOffsets[i + 1] += childOffsets[i];
+		int[] children = new int[childOffsets[length]];
+		int[] filled = new int[length];
+		for (int i = 0; i < length; i++)	//children end up in sentence order
+			if (parents[i] >= 0)
+				children[childOffsets[parents[i]] + filled[parents[i]]++] = i;
+
+		int[] tour = new int[Math.max(1, 2 * length - 1)];
+		int tourLength = 0;
+		int nextPreorder = 0;
+
+		int[] stack = new int[length];
+		int[] nextChild = new int[length];	//position in the children list each stacked token is up to
+		for (int root = 0; root < length; root++){
+			if (parents[root] >= 0)
+				continue;
+
+			int top = 0;
+			stack[0] = root;
+			nextChild[0] = childOffsets[root];
+			depths[root] = 0;
+			roots[root] = root;
+			preorderTokens[nextPreorder] = root;
+			preorder[root] = nextPreorder++;
+			firstVisit[root] = tourLength;
+			tour[tourLength++] = root;
+
+			while (top >= 0){
+				int token = stack[top];
+				if (nextChild[top] < childOffsets[token + 1]){
+					int child = children[nextChild[top]++];
+					depths[child] = depths[token] + 1;
+					roots[child] = root;
+					preorderTokens[nextPreorder] = child;
+					preorder[child] = nextPreorder++;
+					firstVisit[child] = tourLength;
+					tour[tourLength++] = child;
+
+					top++;
+					stack[top] = child;
+					nextChild[top] = childOffsets[child];
+				}
+				else {
+					subtreeEnds[token] = nextPreorder;
+					top--;
+					if (top >= 0)
+						tour[tourLength++] = stack[top];	//back at the parent
+				}
+			}
+		}
+
+		int levels = 1;
+		while ((1 << levels) <= tourLength)
+			levels++;
+		minimumDepthNodes = new int[levels][];
+		minimumDepthNodes[0] = Arrays.copyOf(tour, tourLength);
+		for (int k = 1; k < levels; k++){
+			int[] previous = minimumDepthNodes[k - 1];
+			int half = 1 << (k - 1);
+			int[] level = new int[tourLength - (1 << k) + 1];
+			for (int p = 0; p < level.length; p++)
+				level[p] = shallower(previous[p], previous[p + half]);
+			minimumDepthNodes[k] = level;
+		}
+	}
+
+	private static int[] parentsOf(Sentence sentence){
+		int[] parents = new int[sentence.size()];
+		for (int i = 0; i < parents.length; i++)
+			parents[i] = sentence.parent(i);
+		return parents;
+	}
+
+	private int shallower(int a, int b){
+		return depths[a] <= depths[b] ? a : b;
+	}
+
+	/*
+	 * Number of arcs between token i and the root of its tree.
+	 */
+	public int depth(int i){
+		return depths[i];
+	}
+
+	/*
+	 * Whether ancestor is descendant itself or one of its ancestors.
+	 */
+	public boolean isAncestorOrSelf(int ancestor, int descendant){
+		return roots[descendant] >= 0 &&
+				preorder[ancestor] <= preorder[descendant] &&
+				preorder[descendant] < subtreeEnds[ancestor];
+	}
+
+	/*
+	 * Lowest common ancestor of a and b, or -1 if they are in different trees.
+	 */
+	public int commonAncestor(int a, int b){
+		if (roots[a] < 0 || roots[a] != roots[b])
+			return -1;
+
+		int from = Math.min(firstVisit[a], firstVisit[b]);
+		int to = Math.max(firstVisit[a], firstVisit[b]) + 1;
+		int k = 31 - Integer.numberOfLeadingZeros(to - from);
+		return shallower(minimumDepthNodes[k][from], minimumDepthNodes[k][to - (1 << k)]);
+	}
+
+	/*
+	 * Number of arcs from descendant up to ancestor, or -1 if ancestor isn't one.
+	 */
+	public int ancestorPathLength(int descendant, int ancestor){
+		if (!isAncestorOrSelf(ancestor, descendant))
+			return -1;
+		return depths[descendant] - depths[ancestor];
+	}
+
+	/*
+	 * Number of arcs on the dependency path between a and b, or -1 if there is none.
+	 */
+	public int pathLength(int a, int b){
+		int ancestor = commonAncestor(a, b);
+		if (ancestor < 0)
+			return -1;
+		return depths[a] + depths[b] - 2 * depths[ancestor];
+	}
+
+	/*
+	 * Strict ancestors of token i. The set is shared; don't modify it.
+	 */
+	public BitSet ancestors(int i){
+		if (ancestorSets[i] == null){
+			BitSet ancestors = new BitSet(parents.length);
+			if (roots[i] >= 0 && parents[i] >= 0){
+				ancestors.or(ancestors(parents[i]));
+				ancestors.set(parents[i]);
+			}
+			ancestorSets[i] = ancestors;
+		}
+		return ancestorSets[i];
+	}
+
+	/*
+	 * Strict descendants of token i. The set is shared; don't modify it.
+	 */
+	public BitSet descendants(int i){
+		if (descendantSets[i] == null){
+			BitSet descendants = new BitSet(parents.length);
+			if (roots[i] >= 0)
+				for (int p = preorder[i] + 1; p < subtreeEnds[i]; p++)
+					descendants.set(preorderTokens[p]);
+			descendantSets[i] = descendants;
+		}
+		return descendantSets[i];
+	}
+
+}
@@ -0,0 +1,105 @@
+package util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Thread-safe two-way mapping between strings and consecutive integer ids.
+ * Strings handed out by the vocabulary are canonical, so every occurrence of
+ * the same POS tag (say) shares one String object.
+ */
+public class Vocabulary {
+
+	private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+	private volatile String[] strings = new String[64];
+	private int size = 0;
+
+	/*
+	 * Returns the id of s, adding it to the vocabulary if necessary.
+	 */
+	public int indexOf(String s){
+		Integer id = ids.get(s);
+		if (id != null)
+			return id;
+		return add(s);
+	}
+
+	private synchronized int add(String s){
+		Integer id = ids.get(s);
+		if (id != null)
+			return id;
+
+		String[] strings = this.strings;
+		if (size == strings.length){
+			String[] grown = new String[strings.length * 2];
+			System.arraycopy(strings, 0, grown, 0, size);
+			strings = grown;
+		}
+		strings[size] = s;
+		this.strings = strings;	//publish before the id becomes visible
+		ids.put(s, size);
+		return size++;
+	}
+
+	public String get(int id){
+		return strings[id];
+	}
+
+	/*
+	 * Returns the canonical copy of s.
+	 */
+	public String intern(String s){
+		return get(indexOf(s));
+	}
+
+	public synchronized int size(){
+		return size;
+	}
+
+	public Cache newCache(){
+		return new Cache();
+	}
+
+	/*
+	 * Small single-threaded front for the vocabulary that looks strings up
+	 * directly from a region of a line, so no substring is created when the
+	 * string has been seen before. Each reading thread should use its own cache.
+	 */
+	public class Cache {
+
+		private static final int SIZE = 1024;
+
+		private final String[] cachedStrings = new String[SIZE];
+		private final int[] cachedIds = new int[SIZE];
+
+		public int indexOf(CharSequence line, int start, int end){
+			int hash = 0;
+			for (int i = start; i < end; i++)
+				hash = 31 * hash + line.charAt(i);
+			int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+
+			String cached = cachedStrings[slot];
+			if (cached != null && regionEquals(cached, line, start, end))
+				return cachedIds[slot];
+
+			String s = line.subSequence(start, end).toString();
+			int id = Vocabulary.this.indexOf(s);
+			cachedStrings[slot] = get(id);
+			cachedIds[slot] = id;
+			return id;
+		}
+
+		public String intern(CharSequence line, int start, int end){
+			return get(indexOf(line, start, end));
+		}
+
+		private boolean regionEquals(String s, CharSequence line, int start, int end){
+			if (s.length() != end - start)
+				return false;
+			for (int i = 0; i < s.length(); i++)
+				if (s.charAt(i) != line.charAt(start + i))
+					return false;
+			return true;
+		}
+	}
+
+}
@@ -13,6 +13,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+import util.CorpusUtils;
+
 import withLinearClassifier.argumentClassification.ArgumentClassifier;
 import withLinearClassifier.argumentClassification.ArgumentClassifierA;
 import withLinearClassifier.argumentClassification.ArgumentClassifierB;
@@ -49,7 +51,7 @@ public class Main {
 			pl = LinearClassifier.readClassifier("Testing\\predicateclassifierA.gz");
 			predicateClassifier = new PredicateClassifier(pl);
 		}
-		List<List<ArgumentClassifierToken>> sentences = ArgumentClassifier.sentencesFromCorpus("Testing\\devel.closed");
+		CorpusUtils.Corpus<ArgumentClassifierToken> sentences = ArgumentClassifier.sentences("Testing\\devel.closed");
 		
 		System.out.println();
 		
@@ -60,34 +62,40 @@ public class Main {
 		Counter<String> aCorrect = new ClassicCounter<String>();
 		Counter<String> aPredicted = new ClassicCounter<String>();
 		
-		for (List<ArgumentClassifierToken> sentence : sentences){
-			List<ArgumentClassifierToken> predicates;
-			List<ArgumentClassifierToken> goldPredicates = (List<ArgumentClassifierToken>) PredicateClassifier.goldPredicatesInSentence(sentence);
-			if (USE_PREDICTED_PREDICATES)
-				predicates = (List<ArgumentClassifierToken>) predicateClassifier.predicatesInSentence(sentence);
-			else
-				predicates = goldPredicates;
+		CorpusUtils.SentenceReader<ArgumentClassifierToken> reader = sentences.iterator();
+		try {
+			while (reader.hasNext()){
+				List<ArgumentClassifierToken> sentence = reader.next();
+				List<ArgumentClassifierToken> predicates;
+				List<ArgumentClassifierToken> goldPredicates = (List<ArgumentClassifierToken>) PredicateClassifier.goldPredicatesInSentence(sentence);
+				if (USE_PREDICTED_PREDICATES)
+					predicates = (List<ArgumentClassifierToken>) predicateClassifier.predicatesInSentence(sentence);
+				else
+					predicates = goldPredicates;
 			
-			predictedPredicates += predicates.size();
-			goldPredicateCount += goldPredicates.size();
+				predictedPredicates += predicates.size();
+				goldPredicateCount += goldPredicates.size();
 			
-			for (ArgumentClassifierToken predicate : predicates){
+				for (ArgumentClassifierToken predicate : predicates){
 				
-				if (goldPredicates.contains(predicate))
-					correctPredicates++;
+					if (goldPredicates.contains(predicate))
+						correctPredicates++;
 				
-				Map<ArgumentClassifierToken, String> aArgumentLabels = argumentClassifierC.argumentsOf(predicate);
-				Map<ArgumentClassifierToken, String> goldArgumentLabels = ArgumentClassifier.goldArgumentsOf(predicate);
+					Map<ArgumentClassifierToken, String> aArgumentLabels = argumentClassifierC.argumentsOf(predicate);
+					Map<ArgumentClassifierToken, String> goldArgumentLabels = ArgumentClassifier.goldArgumentsOf(predicate);
 				
-				for (ArgumentClassifierToken argument : ArgumentClassifier.argumentCandidates(predicate)){
-					String aPredictedLabel = aArgumentLabels.get(argument);
-					String goldLabel = goldArgumentLabels.get(argument);
+					for (ArgumentClassifierToken argument : ArgumentClassifier.argumentCandidates(predicate)){
+						String aPredictedLabel = aArgumentLabels.get(argument);
+						String goldLabel = goldArgumentLabels.get(argument);
 					
-					aPredicted.incrementCount(aPredictedLabel);
-					if (aPredictedLabel.equals(goldLabel))
-						aCorrect.incrementCount(goldLabel);
+						aPredicted.incrementCount(aPredictedLabel);
+						if (aPredictedLabel.equals(goldLabel))
+							aCorrect.incrementCount(goldLabel);
+					}
 				}
 			}
+		} finally {
+			reader.close();
 		}
 		
 		List<String> argClasses = new ArrayList<String>();
@@ -2,6 +2,8 @@ package withLinearClassifier.argumentClassification;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
@@ -10,9 +12,13 @@ import java.util.List;
 import java.util.Map;
 
 import edu.stanford.nlp.classify.LinearClassifier;
+import edu.stanford.nlp.classify.Dataset;
+import edu.stanford.nlp.ling.BasicDatum;
 import edu.stanford.nlp.stats.Counter;
 
 import util.CorpusUtils;
+import util.TokenData;
+import util.TreeIndex;
 
 public abstract class ArgumentClassifier {
 	
@@ -24,80 +30,191 @@ public abstract class ArgumentClassifier {
 		this.linearClassifier = linearClassifier;
 	}
 
+	/*
+	 * Argument candidates are the tokens whose path up to the common ancestor
+	 * with the predicate is shorter than MAX_ARGUMENT_PATH, whose common ancestor
+	 * is fewer than MAX_PREDICATE_PATH arcs above the predicate, and whose
+	 * whole dependency path is shorter than MAX_PATH.
+	 * They are found once per predicate and kept on it, so every caller
+	 * shares the same (unmodifiable) list, in sentence order.
+	 */
+	private static final int MAX_ARGUMENT_PATH = 3;
+	private static final int MAX_PREDICATE_PATH = 5;
+	private static final int MAX_PATH = 6;
+	
 	public static List<ArgumentClassifierToken> argumentCandidates(ArgumentClassifierToken predicate){
-		List<ArgumentClassifierToken> candidates = new ArrayList<ArgumentClassifierToken>();
+		List<ArgumentClassifierToken> candidates = predicate.getArgumentCandidates();
+		if (candidates == null){
+			candidates = Collections.unmodifiableList(findArgumentCandidates(predicate));
+			predicate.setArgumentCandidates(candidates);
+		}
+		return candidates;
+	}
+	
+	/*
+	 * Walks up from the predicate one ancestor at a time and collects, below each
+	 * ancestor, the tokens close enough to it, skipping the branch that leads back
+	 * down to the predicate (those tokens have a lower common ancestor).
+	 */
+	private static List<ArgumentClassifierToken> findArgumentCandidates(ArgumentClassifierToken predicate){
+		List<ArgumentClassifierToken> sentenceTokens = predicate.getSentenceTokens();
+		BitSet found = new BitSet(sentenceTokens.size());
 		
-		for (ArgumentClassifierToken t : predicate.getSentenceTokens()){
-			
-			ArgumentClassifierToken ancestor = SentenceUtils.getCommonAncestor(t, predicate);
-			int argumentAncestorPathLength = SentenceUtils.ancestorPathLength(t, ancestor);
-			int predicateAncestorPathLength = SentenceUtils.ancestorPathLength(predicate, ancestor);
-			
-			if (argumentAncestorPathLength < 3 &&
-					predicateAncestorPathLength < 5 &&
-					argumentAncestorPathLength + predicateAncestorPathLength < 6)
-				candidates.add(t);
-			
+		int ancestor = predicate.sentenceIndex;
+		int pathChild = -1;	//child of ancestor on the path to the predicate
+		for (int predicatePath = 0; predicatePath < MAX_PREDICATE_PATH && ancestor >= 0; predicatePath++){
+			int maxArgumentPath = Math.min(MAX_ARGUMENT_PATH, MAX_PATH - predicatePath) - 1;
+			addSubtree(sentenceTokens, ancestor, pathChild, maxArgumentPath, found);
+			pathChild = ancestor;
+			ancestor = sentenceTokens.get(ancestor).parentIndex;
 		}
 		
+		List<ArgumentClassifierToken> candidates = new ArrayList<ArgumentClassifierToken>(found.cardinality());
+		for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1))
+			candidates.add(sentenceTokens.get(i));
 		return candidates;
 	}
 	
-	public static List<List<ArgumentClassifierToken>> sentencesFromCorpus(String corpusLoc) throws IOException{
-		List<List<String[]>> sentenceData = CorpusUtils.sentenceDataFromCorpus(corpusLoc);
-		List<List<ArgumentClassifierToken>> sentences = new ArrayList<List<ArgumentClassifierToken>>();
-		List<ArgumentClassifierToken> sentenceTokens;
+	/*
+	 * Adds token and its descendants at most depth arcs below it, except those under skippedChild.
+	 */
+	private static void addSubtree(List<ArgumentClassifierToken> sentenceTokens, int token, int skippedChild, int depth, BitSet found){
+		found.set(token);
+		if (depth == 0)
+			return;
+		ArgumentClassifierToken parent = sentenceTokens.get(token);
+		for (int k = 0; k < parent.numChildren(); k++){
+			int child = parent.childIndex(k);
+			if (child != skippedChild)
+				addSubtree(sentenceTokens, child, -1, depth - 1, found);
+		}
+	}
+	
+	/*
+	 * Builds the tokens of one sentence from its corpus column data,
+	 * linking each token to its parent, neighbors, and predicates;
+	 * the tokens share one TreeIndex of the sentence.
+	 */
+	public static List<ArgumentClassifierToken> sentenceFromData(List<TokenData> sentence){
+		List<ArgumentClassifierToken> sentenceTokens = new ArrayList<ArgumentClassifierToken>();
+		List<ArgumentClassifierToken> predicates = new ArrayList<ArgumentClassifierToken>();
 		
-		for (List<String[]> sentence : sentenceData){
-			sentenceTokens = new ArrayList<ArgumentClassifierToken>();
-			List<ArgumentClassifierToken> predicates = new ArrayList<ArgumentClassifierToken>();
-			
-			for (String[] tokenData : sentence){
-				ArgumentClassifierToken token = new ArgumentClassifierToken(	//make new token, add to list
-						tokenData[CorpusUtils.SPLIT_FORM_COLUMN],	//split_form
-						tokenData[CorpusUtils.SPLIT_LEMMA_COLUMN],	//split_lemma
-						tokenData[CorpusUtils.PPOSS_COLUMN],		//pposs
-						tokenData[CorpusUtils.DEPREL_COLUMN], 		//deprel
-						tokenData[CorpusUtils.PREDICATE_COLUMN],	//predicate role
+		int[] parents = new int[sentence.size()];
+		for (int i = 0; i < parents.length; i++)
+			parents[i] = sentence.get(i).parentIndex;
+		TreeIndex tree = new TreeIndex(parents);
+		
+		for (TokenData tokenData : sentence){
+			ArgumentClassifierToken token = new ArgumentClassifierToken(	//make new token, add to list
+					tokenData.splitForm,
+					tokenData.splitLemma,
+					tokenData.pposs,
+					tokenData.deprel,
+					tokenData.predicateRole,
 
-						Integer.parseInt(tokenData[CorpusUtils.PARENT_INDEX_COLUMN]) - 1,	//parent index
-						Integer.parseInt(tokenData[CorpusUtils.INDEX_COLUMN]) - 1, //this index
-						//offset by 1 because array indices are 0-based, not 1-based
+					tokenData.parentIndex,
+					tokenData.sentenceIndex,
 
-						sentenceTokens);		//list of sentence tokens
-						
-				sentenceTokens.add(token);
-				if(token.isPredicate())
-					predicates.add(token);
-				
-			}
+					sentenceTokens,		//list of sentence tokens
+					tree);
+					
+			sentenceTokens.add(token);
+			if(token.isPredicate())
+				predicates.add(token);
+			
+		}
 
-			for (int i = 0; i < sentence.size(); i++){
-				String[] tokenData = sentence.get(i);
-				ArgumentClassifierToken token = sentenceTokens.get(i);
-				for (int j = CorpusUtils.ARGS_START_COLUMN; j < tokenData.length; j++)	//link predicate arg to predicate
-					if (!tokenData[j].equals("_")){
-						int predicateNum = j - CorpusUtils.ARGS_START_COLUMN;
-						token.addPredicate(predicates.get(predicateNum).sentenceIndex, tokenData[j]);
-					}
+		for (int i = 0; i < sentence.size(); i++){
+			String[] arguments = sentence.get(i).arguments;
+			ArgumentClassifierToken token = sentenceTokens.get(i);
+			for (int predicateNum = 0; predicateNum < arguments.length; predicateNum++)	//link predicate arg to predicate
+				if (!arguments[predicateNum].equals("_"))
+					token.addPredicate(predicates.get(predicateNum).sentenceIndex, arguments[predicateNum]);
+		}
+		
+		
+		for (ArgumentClassifierToken t : sentenceTokens){ //link parents to children
+			if (t.parentIndex >= 0){
+				sentenceTokens.get(t.parentIndex).addChild(t.sentenceIndex);
 			}
-			
-			
-			for (ArgumentClassifierToken t : sentenceTokens){ //link parents to children
-				if (t.parentIndex >= 0){
-					sentenceTokens.get(t.parentIndex).addChild(t.sentenceIndex);
-				}
-				t.updateAdjacentTokens();
+			t.updateAdjacentTokens();
+		}
+		
+		return sentenceTokens;
+	}
+	
+	/*
+	 * Streams the sentences of a corpus, one sentence in memory at a time.
+	 */
+	public static CorpusUtils.Corpus<ArgumentClassifierToken> sentences(String corpusLoc){
+		return CorpusUtils.sentences(corpusLoc, new CorpusUtils.SentenceConverter<ArgumentClassifierToken>(){
+			public List<ArgumentClassifierToken> convert(List<TokenData> sentenceData){
+				return sentenceFromData(sentenceData);
 			}
-			
-			sentences.add(sentenceTokens);
-
+		});
+	}
+	
+	public static List<List<ArgumentClassifierToken>> sentencesFromCorpus(String corpusLoc) throws IOException{
+		List<List<ArgumentClassifierToken>> sentences = new ArrayList<List<ArgumentClassifierToken>>();
+		
+		CorpusUtils.SentenceReader<ArgumentClassifierToken> reader = sentences(corpusLoc).iterator();
+		try {
+			while (reader.hasNext())
+				sentences.add(reader.next());
+		} finally {
+			reader.close();
 		}
 		
 		return sentences;
 		
 	}
 	
+	/*
+	 * Features of one argument candidate of a predicate. previousArgClass is the
+	 * gold label of the last non-NIL candidate of the same predicate, or null.
+	 */
+	protected interface CandidateFeatures {
+		Collection<String> of(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previousArgClass);
+	}
+	
+	/*
+	 * Builds a dataset in a single pass over the corpus: each sentence is read,
+	 * turned into a datum per argument candidate of each of its gold predicates,
+	 * and then let go of.
+	 */
+	protected static Dataset<String, String> dataSetFromCorpus(String corpusLoc, CandidateFeatures features){
+		
+		Dataset<String, String> dataset = new Dataset<String, String>();
+		
+		CorpusUtils.SentenceReader<ArgumentClassifierToken> reader = sentences(corpusLoc).iterator();
+		try {
+			while (reader.hasNext()){
+				List<ArgumentClassifierToken> sentence = reader.next();
+			
+				for (ArgumentClassifierToken predicate : sentence){
+					if (!predicate.isPredicate())
+						continue;
+				
+					String previousArgClass = null;
+					for (ArgumentClassifierToken possibleArg : argumentCandidates(predicate))
+					{
+						String label = possibleArg.predicateLabel(predicate);
+						dataset.add(new BasicDatum<String, String>(
+								features.of(predicate, possibleArg, previousArgClass),
+								label));
+						if (!label.equals("NIL"))
+							previousArgClass = label;
+					}
+				}
+			
+			}
+		} finally {
+			reader.close();
+		}
+		
+		return dataset;
+	}
+	
 	protected static List<String> sortArgLabels(Counter<String> argCounter) {
 		List<Map.Entry<String, Double>> list = new LinkedList<Map.Entry<String, Double>>(argCounter.entrySet());
 		Collections.sort(list, new Comparator<Map.Entry<String, Double>>() {
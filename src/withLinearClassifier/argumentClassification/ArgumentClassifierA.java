@@ -2,11 +2,11 @@ package withLinearClassifier.argumentClassification;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -24,7 +24,7 @@ public class ArgumentClassifierA extends ArgumentClassifier{
 	public static Collection<String> getFeatures(ArgumentClassifierToken predicate,
 			ArgumentClassifierToken argument){
 		
-		if (!argument.getSentenceTokens().equals(predicate.getSentenceTokens()))
+		if (argument.getTree() != predicate.getTree())
 			return null;
 		
 		Collection<String> features = new ArrayList<String>();
@@ -132,32 +132,12 @@ public class ArgumentClassifierA extends ArgumentClassifier{
 	}
 	
 	public static Dataset<String, String> dataSetFromCorpus(String corpusLoc) throws IOException{
-		
-		Dataset<String, String> dataset = new Dataset<String, String>();
-		List<List<ArgumentClassifierToken>> sentences = sentencesFromCorpus(corpusLoc);
-		
-		while (!sentences.isEmpty()){
-			
-			List<ArgumentClassifierToken> sentence = sentences.remove(0);
-			List<ArgumentClassifierToken> predicates = new ArrayList<ArgumentClassifierToken>();
-			for (ArgumentClassifierToken token : sentence){
-				if (token.isPredicate())
-					predicates.add(token);
+		return dataSetFromCorpus(corpusLoc, new CandidateFeatures(){
+			public Collection<String> of(ArgumentClassifierToken predicate,
+					ArgumentClassifierToken argument, String previousArgClass){
+				return getFeatures(predicate, argument);
 			}
-			
-			for (ArgumentClassifierToken predicate : predicates){
-				for (ArgumentClassifierToken possibleArg : argumentCandidates(predicate))
-				{
-					String label = possibleArg.predicateLabel(predicate);
-					dataset.add(new BasicDatum<String, String>(
-							getFeatures(predicate, possibleArg),
-							label));
-				}
-			}
-			
-		}
-		
-		return dataset;
+		});
 	}
 	
 	public String argClass(ArgumentClassifierToken argument, ArgumentClassifierToken predicate){
@@ -172,7 +152,7 @@ public class ArgumentClassifierA extends ArgumentClassifier{
 		
 		Map<ArgumentClassifierToken, String> argumentLinks = new LinkedHashMap<ArgumentClassifierToken, String>();
 		Set<String> previousLabels = new HashSet<String>();
-		Set<Integer> restrictedArgs = new HashSet<Integer>();
+		BitSet restrictedArgs = new BitSet();	//ancestors and descendants of accepted core arguments
 		
 		nextArgument:
 		for (ArgumentClassifierToken argument : argumentCandidates(predicate)){
@@ -193,9 +173,9 @@ public class ArgumentClassifierA extends ArgumentClassifier{
 					previousLabels.add(label);
 					continue nextArgument;
 				}
-				if (!restrictedArgs.contains(argument.sentenceIndex)){
-					restrictedArgs.addAll(argument.getAncestorIndices());
-					restrictedArgs.addAll(argument.getDescendantIndices());
+				if (!restrictedArgs.get(argument.sentenceIndex)){
+					restrictedArgs.or(argument.getAncestors());
+					restrictedArgs.or(argument.getDescendants());
 					argumentLinks.put(argument, label);
 					if (label.matches("A[0-9]"))
 						previousLabels.add(label);
@@ -2,11 +2,11 @@ package withLinearClassifier.argumentClassification;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -24,7 +24,7 @@ public class ArgumentClassifierB extends ArgumentClassifier{
 	public static Collection<String> getFeatures(ArgumentClassifierToken predicate,
 			ArgumentClassifierToken argument, String prevArgClass){
 		
-		if (!argument.getSentenceTokens().equals(predicate.getSentenceTokens()))
+		if (argument.getTree() != predicate.getTree())
 			return null;
 		
 		Collection<String> features = new ArrayList<String>();
@@ -138,35 +138,12 @@ public class ArgumentClassifierB extends ArgumentClassifier{
 	}
 	
 	public static Dataset<String, String> dataSetFromCorpus(String corpusLoc) throws IOException{
-		
-		Dataset<String, String> dataset = new Dataset<String, String>();
-		List<List<ArgumentClassifierToken>> sentences = sentencesFromCorpus(corpusLoc);
-		
-		while (!sentences.isEmpty()){
-			
-			List<ArgumentClassifierToken> sentence = sentences.remove(0);
-			List<ArgumentClassifierToken> predicates = new ArrayList<ArgumentClassifierToken>();
-			for (ArgumentClassifierToken token : sentence){
-				if (token.isPredicate())
-					predicates.add(token);
+		return dataSetFromCorpus(corpusLoc, new CandidateFeatures(){
+			public Collection<String> of(ArgumentClassifierToken predicate,
+					ArgumentClassifierToken argument, String previousArgClass){
+				return getFeatures(predicate, argument, previousArgClass);
 			}
-			
-			for (ArgumentClassifierToken predicate : predicates){
-				String previousArgClass = null;
-				for (ArgumentClassifierToken possibleArg : argumentCandidates(predicate))
-				{
-					String label = possibleArg.predicateLabel(predicate);
-					dataset.add(new BasicDatum<String, String>(
-							getFeatures(predicate, possibleArg, previousArgClass),
-							label));
-					if (!label.equals("NIL"))
-						previousArgClass = label;
-				}
-			}
-			
-		}
-		
-		return dataset;
+		});
 	}
 	
 	public String argClass(ArgumentClassifierToken argument, ArgumentClassifierToken predicate, String previousArgClass){
@@ -182,7 +159,7 @@ public class ArgumentClassifierB extends ArgumentClassifier{
 		
 		Map<ArgumentClassifierToken, String> argumentLinks = new LinkedHashMap<ArgumentClassifierToken, String>();
 		Set<String> previousLabels = new HashSet<String>();
-		Set<Integer> restrictedArgs = new HashSet<Integer>();
+		BitSet restrictedArgs = new BitSet();	//ancestors and descendants of accepted core arguments
 		
 		nextArgument:
 		for (ArgumentClassifierToken argument : argumentCandidates(predicate)){	
@@ -204,9 +181,9 @@ public class ArgumentClassifierB extends ArgumentClassifier{
 					continue nextArgument;
 				}
 				
-				if (!restrictedArgs.contains(argument.sentenceIndex)){
-					restrictedArgs.addAll(argument.getAncestorIndices());
-					restrictedArgs.addAll(argument.getDescendantIndices());
+				if (!restrictedArgs.get(argument.sentenceIndex)){
+					restrictedArgs.or(argument.getAncestors());
+					restrictedArgs.or(argument.getDescendants());
 					argumentLinks.put(argument, label);
 					previousArgClass = label;
 					if(label.matches("A[0-9]"))
@@ -2,11 +2,11 @@ package withLinearClassifier.argumentClassification;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Deque;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
@@ -28,7 +28,7 @@ public class ArgumentClassifierC extends ArgumentClassifier{
 	public static Collection<String> getFeatures(ArgumentClassifierToken predicate,
 			ArgumentClassifierToken argument){
 		
-		if (!argument.getSentenceTokens().equals(predicate.getSentenceTokens()))
+		if (argument.getTree() != predicate.getTree())
 			return null;
 		
 		Collection<String> features = new ArrayList<String>();
@@ -136,32 +136,12 @@ public class ArgumentClassifierC extends ArgumentClassifier{
 	}
 	
 	public static Dataset<String, String> dataSetFromCorpus(String corpusLoc) throws IOException{
-		
-		Dataset<String, String> dataset = new Dataset<String, String>();
-		List<List<ArgumentClassifierToken>> sentences = sentencesFromCorpus(corpusLoc);
-		
-		while (!sentences.isEmpty()){
-			
-			List<ArgumentClassifierToken> sentence = sentences.remove(0);
-			List<ArgumentClassifierToken> predicates = new ArrayList<ArgumentClassifierToken>();
-			for (ArgumentClassifierToken token : sentence){
-				if (token.isPredicate())
-					predicates.add(token);
+		return dataSetFromCorpus(corpusLoc, new CandidateFeatures(){
+			public Collection<String> of(ArgumentClassifierToken predicate,
+					ArgumentClassifierToken argument, String previousArgClass){
+				return getFeatures(predicate, argument);
 			}
-			
-			for (ArgumentClassifierToken predicate : predicates){
-				for (ArgumentClassifierToken possibleArg : argumentCandidates(predicate))
-				{
-					String label = possibleArg.predicateLabel(predicate);
-					dataset.add(new BasicDatum<String, String>(
-							getFeatures(predicate, possibleArg),
-							label));
-				}
-			}
-			
-		}
-		
-		return dataset;
+		});
 	}
 	
 	public String argClass(ArgumentClassifierToken argument, ArgumentClassifierToken predicate){
@@ -201,11 +181,11 @@ public class ArgumentClassifierC extends ArgumentClassifier{
 			
 			if (!argLabel.equals("NIL") && !argLabel.equals("SU") && !argLabel.startsWith("AM-")){
 				
-				Collection<Integer> restrictedIndices = registeredArg.getDescendantIndices();
-				restrictedIndices.addAll(registeredArg.getAncestorIndices());
+				BitSet descendants = registeredArg.getDescendants();
+				BitSet ancestors = registeredArg.getAncestors();
 				
 				for (ArgumentClassifierToken token : argumentLabelProbabilities.keySet()){
-					if (restrictedIndices.contains(token.sentenceIndex)){
+					if (descendants.get(token.sentenceIndex) || ancestors.get(token.sentenceIndex)){
 						Counter<String> tokenLabelProbabilities = argumentLabelProbabilities.get(token);
 						Counter<String> updatedTokenLabelProbabilities = new ClassicCounter<String>();
 						for (Map.Entry<String, Double> e : tokenLabelProbabilities.entrySet()){
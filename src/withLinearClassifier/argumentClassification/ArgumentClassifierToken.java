@@ -1,23 +1,36 @@
 package withLinearClassifier.argumentClassification;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
+import util.TreeIndex;
 import withLinearClassifier.predicateClassification.FeaturedPredicateToken;
 
 public class ArgumentClassifierToken extends FeaturedPredicateToken{
 	
 	private Map<Integer, String> labels = new HashMap<Integer, String>();
+	private final TreeIndex tree;	//shared by the tokens of a sentence
+	private List<ArgumentClassifierToken> argumentCandidates;	//when this token is a predicate; see ArgumentClassifier.argumentCandidates
 
 	public ArgumentClassifierToken(String splitForm, String splitLemma,
 			String pposs, String deprel, String predicateRole, int parentIndex,
-			int sentenceIndex, List<ArgumentClassifierToken> sentenceTokens) {
+			int sentenceIndex, List<ArgumentClassifierToken> sentenceTokens, TreeIndex tree) {
 		super(splitForm, splitLemma, pposs, deprel, predicateRole, parentIndex,
 				sentenceIndex, sentenceTokens);
+		this.tree = tree;
+	}
+	
+	/*
+	 * The precomputed tree queries for this token's sentence;
+	 * the same object for every token of the sentence.
+	 */
+	public TreeIndex getTree(){
+		return tree;
 	}
 	
 	public void addChild(int childIndex) {
@@ -36,6 +49,22 @@ public class ArgumentClassifierToken extends FeaturedPredicateToken{
 		return null;
 	}
 	
+	int numChildren(){
+		return childrenIndices.size();
+	}
+	
+	int childIndex(int k){
+		return childrenIndices.get(k);
+	}
+	
+	List<ArgumentClassifierToken> getArgumentCandidates(){
+		return argumentCandidates;
+	}
+	
+	void setArgumentCandidates(List<ArgumentClassifierToken> argumentCandidates){
+		this.argumentCandidates = argumentCandidates;
+	}
+	
 	public void addPredicate(int predicateIndex, String label){
 		labels.put(predicateIndex, label);
 	}
@@ -60,26 +89,31 @@ public class ArgumentClassifierToken extends FeaturedPredicateToken{
 		return children;
 	}
 	
+	/*
+	 * Descendants and ancestors come from the sentence's TreeIndex,
+	 * which builds each set once; the returned sets are shared and must not be modified.
+	 */
+	public BitSet getDescendants(){
+		return tree.descendants(sentenceIndex);
+	}
+	
+	public BitSet getAncestors(){
+		return tree.ancestors(sentenceIndex);
+	}
+	
 	public Collection<Integer> getDescendantIndices(){
-		Collection<Integer> descendantIndices = new HashSet<Integer>();
-		for (Integer i : childrenIndices){
-			ArgumentClassifierToken child = (ArgumentClassifierToken) sentenceTokens.get(i);
-			descendantIndices.add(i);
-			descendantIndices.addAll(child.getDescendantIndices());
-		}
-		return descendantIndices;
+		return indicesOf(getDescendants());
 	}
 	
 	public Collection<Integer> getAncestorIndices(){
-		Collection<Integer> ancestorIndices = new HashSet<Integer>();
-		ArgumentClassifierToken ancestor = this;
-		while (ancestor.parentIndex >= 0){
-			ancestorIndices.add(ancestor.parentIndex);
-			ancestor = (ArgumentClassifierToken) ancestor.getParent();
-		}
-		return ancestorIndices;
+		return indicesOf(getAncestors());
 	}
 	
-	
+	private static Collection<Integer> indicesOf(BitSet set){
+		Collection<Integer> indices = new HashSet<Integer>();
+		for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1))
+			indices.add(i);
+		return indices;
+	}
 	
 }
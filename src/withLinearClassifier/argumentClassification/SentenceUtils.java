@@ -4,58 +4,42 @@ import java.util.ArrayDeque;
 import java.util.Deque;
 
 public class SentenceUtils {
+	/*
+	 * Tree queries are answered by the sentence's TreeIndex (see ArgumentClassifierToken.getTree),
+	 * so none of them walk the tree or allocate.
+	 */
 	public static ArgumentClassifierToken getCommonAncestor(ArgumentClassifierToken a, ArgumentClassifierToken b){
 		
-		if (!a.getSentenceTokens().equals(b.getSentenceTokens()))
+		if (a.getTree() != b.getTree())
 			return null;
 
-		Deque<Integer> aAncestorIndices = new ArrayDeque<Integer>();
-		Deque<Integer> bAncestorIndices = new ArrayDeque<Integer>();
-		ArgumentClassifierToken possibleAncestor = a;
-
-		aAncestorIndices.addFirst(a.sentenceIndex);
-		while (possibleAncestor.parentIndex >= 0){
-			possibleAncestor = (ArgumentClassifierToken) possibleAncestor.getParent();
-			aAncestorIndices.addFirst(possibleAncestor.sentenceIndex);
-		}
-
-		possibleAncestor = b;
-		bAncestorIndices.addFirst(b.sentenceIndex);
-		while (possibleAncestor.parentIndex >= 0){
-			possibleAncestor = (ArgumentClassifierToken) possibleAncestor.getParent();
-			bAncestorIndices.addFirst(possibleAncestor.sentenceIndex);
-		}
-
-		int ancestorIndex = 0;
-		while (!aAncestorIndices.isEmpty() && !bAncestorIndices.isEmpty() && aAncestorIndices.peekFirst().equals(bAncestorIndices.peekFirst())){
-			ancestorIndex = aAncestorIndices.removeFirst();
-			bAncestorIndices.removeFirst();
-		}
+		int ancestorIndex = a.getTree().commonAncestor(a.sentenceIndex, b.sentenceIndex);
+		if (ancestorIndex < 0)
+			return null;
 
 		return a.getSentenceTokens().get(ancestorIndex);
 
 	}
 
 	public static int ancestorPathLength(ArgumentClassifierToken a, ArgumentClassifierToken ancestor){
-		if (!a.getSentenceTokens().equals(ancestor.getSentenceTokens()))
+		if (ancestor == null || a.getTree() != ancestor.getTree())
 			return -1;
 
-		return ancestorPath(a, ancestor).size() - 1;
+		return a.getTree().ancestorPathLength(a.sentenceIndex, ancestor.sentenceIndex);
 	}
 
 	public static Deque<ArgumentClassifierToken> ancestorPath(ArgumentClassifierToken a,
 			ArgumentClassifierToken ancestor) {
-		if (!a.getSentenceTokens().equals(ancestor.getSentenceTokens()))
+		if (a.getTree() != ancestor.getTree() ||
+				!a.getTree().isAncestorOrSelf(ancestor.sentenceIndex, a.sentenceIndex))
 			return null;
 
 		Deque<ArgumentClassifierToken> path = new ArrayDeque<ArgumentClassifierToken>();
 		ArgumentClassifierToken currentToken = a;
 		path.add(a);
 
-		while (!currentToken.equals(ancestor)){
+		while (currentToken != ancestor){
 			currentToken = (ArgumentClassifierToken) currentToken.getParent();
-			if (currentToken == null)
-				return null;
 			path.add(currentToken);
 		}
 
@@ -66,25 +50,19 @@ public class SentenceUtils {
 	public static int dependencyPathLength(ArgumentClassifierToken a,
 			ArgumentClassifierToken b){
 
-		if (!a.getSentenceTokens().equals(b.getSentenceTokens()))
+		if (a.getTree() != b.getTree())
 			return -1;
 
-		ArgumentClassifierToken ancestor = getCommonAncestor(a, b);
-
-		Deque<ArgumentClassifierToken> pathA = ancestorPath(a, ancestor);
-		Deque<ArgumentClassifierToken> pathB = ancestorPath(b, ancestor);
-		
-		return pathA.size() + pathB.size() - 2;
+		return a.getTree().pathLength(a.sentenceIndex, b.sentenceIndex);
 
 	}
 
 	public static Deque<ArgumentClassifierToken> dependencyPath(ArgumentClassifierToken a,
 			ArgumentClassifierToken b){
 
-		if (!a.getSentenceTokens().equals(b.getSentenceTokens()))
-			return null;
-
 		ArgumentClassifierToken ancestor = getCommonAncestor(a, b);
+		if (ancestor == null)
+			return null;
 
 		Deque<ArgumentClassifierToken> pathA = ancestorPath(a, ancestor);
 		Deque<ArgumentClassifierToken> pathB = ancestorPath(b, ancestor);
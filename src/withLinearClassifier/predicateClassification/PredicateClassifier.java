@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import util.CorpusUtils;
+import util.TokenData;
 
 import edu.stanford.nlp.classify.Dataset;
 import edu.stanford.nlp.classify.LinearClassifier;
@@ -41,48 +42,65 @@ public class PredicateClassifier {
 	public static Dataset<String, String> dataSetFromCorpus(String corpusLoc)
 			throws NumberFormatException, IOException{
 
-		List<List<String[]>> sentences = CorpusUtils.sentenceDataFromCorpus(corpusLoc);
 		Dataset<String, String> dataset = new Dataset<String, String>();
-		List<FeaturedPredicateToken> sentenceTokens = new ArrayList<FeaturedPredicateToken>();
 
 		System.out.println("Generating dataset");
-		while(!sentences.isEmpty()){
-			List<String[]> sentence = sentences.remove(0);
-			for (String[] tokenData : sentence){
-				sentenceTokens.add(new FeaturedPredicateToken(	//make new token, add to list
-						tokenData[CorpusUtils.SPLIT_FORM_COLUMN],	//split_form
-						tokenData[CorpusUtils.SPLIT_LEMMA_COLUMN],	//split_lemma
-						tokenData[CorpusUtils.PPOSS_COLUMN],		//pposs
-						tokenData[CorpusUtils.DEPREL_COLUMN], 		//deprel
-						tokenData[CorpusUtils.PREDICATE_COLUMN],	//predicate role
-
-						Integer.parseInt(tokenData[CorpusUtils.PARENT_INDEX_COLUMN]) - 1,	//parent index
-						Integer.parseInt(tokenData[CorpusUtils.INDEX_COLUMN]) - 1, //this index
-						//offset by 1 because array indices are 0-based, not 1-based
-
-						sentenceTokens));		//list of sentence tokens	
-			}
-			
-			for (FeaturedPredicateToken t : sentenceTokens){ 
-				if (t.parentIndex >= 0){	//link parents to children
-					FeaturedPredicateToken parent = sentenceTokens.get(t.parentIndex);
-					parent.addChild(t.sentenceIndex);
+		CorpusUtils.SentenceReader<FeaturedPredicateToken> reader = sentences(corpusLoc).iterator();
+		try {
+			while (reader.hasNext()){
+				List<FeaturedPredicateToken> sentenceTokens = reader.next();
+				for (FeaturedPredicateToken t : sentenceTokens){	//add tokens to dataset
+					dataset.add(t.asDatum());
 				}
-				t.updateAdjacentTokens();
 			}
-
-			for (FeaturedPredicateToken t : sentenceTokens){	//add tokens to dataset
-				dataset.add(t.asDatum());
-			}
-			
-			sentenceTokens.clear();
-			
+		} finally {
+			reader.close();
 		}
 
 		return dataset;
 
 	}
 	
+	/*
+	 * Builds the tokens of one sentence from its corpus column data,
+	 * linking each token to its parent and neighbors.
+	 */
+	public static List<FeaturedPredicateToken> sentenceFromData(List<TokenData> sentence){
+		List<FeaturedPredicateToken> sentenceTokens = new ArrayList<FeaturedPredicateToken>();
+		for (TokenData tokenData : sentence){
+			sentenceTokens.add(new FeaturedPredicateToken(	//make new token, add to list
+					tokenData.splitForm,
+					tokenData.splitLemma,
+					tokenData.pposs,
+					tokenData.deprel,
+					tokenData.predicateRole,
+
+					tokenData.parentIndex,
+					tokenData.sentenceIndex,
+
+					sentenceTokens));		//list of sentence tokens	
+		}
+		
+		for (FeaturedPredicateToken t : sentenceTokens){ 
+			if (t.parentIndex >= 0){	//link parents to children
+				FeaturedPredicateToken parent = sentenceTokens.get(t.parentIndex);
+				parent.addChild(t.sentenceIndex);
+			}
+			t.updateAdjacentTokens();
+		}
+		
+		return sentenceTokens;
+	}
 	
+	/*
+	 * Streams the sentences of a corpus, one sentence in memory at a time.
+	 */
+	public static CorpusUtils.Corpus<FeaturedPredicateToken> sentences(String corpusLoc){
+		return CorpusUtils.sentences(corpusLoc, new CorpusUtils.SentenceConverter<FeaturedPredicateToken>(){
+			public List<FeaturedPredicateToken> convert(List<TokenData> sentenceData){
+				return sentenceFromData(sentenceData);
+			}
+		});
+	}
 	
 }
@@ -9,6 +9,7 @@ import java.util.Map;
 import edu.stanford.nlp.classify.Dataset;
 import edu.stanford.nlp.stats.ClassicCounter;
 import edu.stanford.nlp.stats.Counter;
+import util.CorpusUtils;
 import withPerceptronClassifier.argumentClassifier.ArgumentClassifier;
 import withPerceptronClassifier.argumentClassifier.ArgumentClassifierA;
 import withPerceptronClassifier.argumentClassifier.ArgumentClassifierB;
@@ -31,11 +32,15 @@ public class Main {
 		
 		
 		int i = 0;
-		List<List<FeaturedPredicateToken>> list = PredicateClassifier.sentencesFromCorpus("Testing\\devel.closed");
-		for (List<FeaturedPredicateToken> listCeption : list)
-			for (FeaturedPredicateToken t : listCeption)
-				if (t.goldIsPredicate())
-					i++;
+		CorpusUtils.SentenceReader<FeaturedPredicateToken> predicateSentences = PredicateClassifier.sentences("Testing\\devel.closed").iterator();
+		try {
+			while (predicateSentences.hasNext())
+				for (FeaturedPredicateToken t : predicateSentences.next())
+					if (t.goldIsPredicate())
+						i++;
+		} finally {
+			predicateSentences.close();
+		}
 		System.out.println(i);
 		
 		
@@ -49,7 +54,7 @@ public class Main {
 		//classifier.train(trainSet);
 		//classifier.save("PerceptronTesting\\argumentClassifierA.gz");
 		
-		List<List<ArgumentClassifierToken>> sentences = ArgumentClassifier.sentencesFromCorpus("Testing\\devel.closed");		
+		CorpusUtils.Corpus<ArgumentClassifierToken> sentences = ArgumentClassifier.sentences("Testing\\devel.closed");		
 		PredicateClassifier predicateClassifier;
 		
 		classifier = PerceptronClassifier.load("PerceptronTesting\\argumentClassifierA.gz");
@@ -63,31 +68,37 @@ public class Main {
 		if (USE_PREDICTED_PREDICATES)
 			predicateClassifier = new PredicateClassifier(PerceptronClassifier.load("PerceptronTesting\\predicateClassifierA'.gz"));
 		
-		for (List<ArgumentClassifierToken> sentence : sentences){
+		CorpusUtils.SentenceReader<ArgumentClassifierToken> reader = sentences.iterator();
+		try {
+			while (reader.hasNext()){
+				List<ArgumentClassifierToken> sentence = reader.next();
 			
-			List<ArgumentClassifierToken> predicates;
-			List<ArgumentClassifierToken> goldPredicates = (List<ArgumentClassifierToken>) PredicateClassifier.goldPredicatesInSentence(sentence);
+				List<ArgumentClassifierToken> predicates;
+				List<ArgumentClassifierToken> goldPredicates = (List<ArgumentClassifierToken>) PredicateClassifier.goldPredicatesInSentence(sentence);
 			
-			if (USE_PREDICTED_PREDICATES)
-				predicates = (List<ArgumentClassifierToken>) predicateClassifier.predicatesInSentence(sentence);
-			else
-				predicates = goldPredicates;
+				if (USE_PREDICTED_PREDICATES)
+					predicates = (List<ArgumentClassifierToken>) predicateClassifier.predicatesInSentence(sentence);
+				else
+					predicates = goldPredicates;
 			
-			for (ArgumentClassifierToken predicate : predicates){
+				for (ArgumentClassifierToken predicate : predicates){
 				
-				Map<ArgumentClassifierToken, String> aArgumentLabels = argumentClassifier.argumentsOf(predicate);
-				Map<ArgumentClassifierToken, String> goldArgumentLabels = ArgumentClassifier.goldArgumentsOf(predicate);
+					Map<ArgumentClassifierToken, String> aArgumentLabels = argumentClassifier.argumentsOf(predicate);
+					Map<ArgumentClassifierToken, String> goldArgumentLabels = ArgumentClassifier.goldArgumentsOf(predicate);
 				
-				for (ArgumentClassifierToken argument : ArgumentClassifier.argumentCandidates(predicate)){
-					String aPredictedLabel = aArgumentLabels.get(argument);
-					String goldLabel = goldArgumentLabels.get(argument);
+					for (ArgumentClassifierToken argument : ArgumentClassifier.argumentCandidates(predicate)){
+						String aPredictedLabel = aArgumentLabels.get(argument);
+						String goldLabel = goldArgumentLabels.get(argument);
 					
-					aPredicted.incrementCount(aPredictedLabel);
-					goldLabels.incrementCount(goldLabel);
-					if (aPredictedLabel.equals(goldLabel))
-						aCorrect.incrementCount(goldLabel);
+						aPredicted.incrementCount(aPredictedLabel);
+						goldLabels.incrementCount(goldLabel);
+						if (aPredictedLabel.equals(goldLabel))
+							aCorrect.incrementCount(goldLabel);
+					}
 				}
 			}
+		} finally {
+			reader.close();
 		}
 		
 		List<String> argClasses = new ArrayList<String>();
@@ -0,0 +1,46 @@
+package withPerceptronClassifier;
+
+import java.io.IOException;
+
+import edu.stanford.nlp.classify.Dataset;
+import withPerceptronClassifier.argumentClassifier.ArgumentClassifierA;
+import withPerceptronClassifier.classify.PerceptronClassifier;
+
+/*
+ * Model size against dev accuracy for the A argument classifier: trains with
+ * each feature count threshold, then prunes the features whose averaged weights
+ * are all below each threshold, and prints the features kept, the size of the
+ * weights and the accuracy on the dev set.
+ *
+ * Arguments: [train corpus] [dev corpus] [epochs]
+ */
+public class PruningReport {
+
+	private static final int[] MIN_FEATURE_COUNTS = { 1, 2, 3, 5 };
+	private static final double[] PRUNE_THRESHOLDS = { -1, 0, 0.001, 0.01, 0.1 };	//on averaged weights; -1 keeps every feature
+
+	public static void main(String[] args) throws IOException {
+		String trainCorpus = args.length > 0 ? args[0] : "Testing\\train.closed";
+		String devCorpus = args.length > 1 ? args[1] : "Testing\\devel.closed";
+		int epochs = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+		Dataset<String, String> trainSet = ArgumentClassifierA.dataSetFromCorpus(trainCorpus);
+		Dataset<String, String> devSet = ArgumentClassifierA.dataSetFromCorpus(devCorpus);
+		long steps = (long) epochs * trainSet.size();	//the summed weights are the averaged weights times this
+
+		System.out.println("minCount\tthreshold\tfeatures\tweightBytes\tdevAccuracy");
+		for (int minFeatureCount : MIN_FEATURE_COUNTS){
+			PerceptronClassifier classifier = new PerceptronClassifier(epochs);
+			classifier.setMinFeatureCount(minFeatureCount);
+			classifier.train(trainSet);
+
+			for (double threshold : PRUNE_THRESHOLDS){
+				PerceptronClassifier pruned = classifier.compacted(PerceptronClassifier.Precision.DOUBLE, threshold < 0 ? -1 : threshold * steps);
+				System.out.println(minFeatureCount + "\t" + threshold + "\t" +
+						pruned.numFeatures() + "\t" + pruned.weightBytes() + "\t" +
+						String.format("%.4f", pruned.accuracy(devSet)));
+			}
+		}
+	}
+
+}
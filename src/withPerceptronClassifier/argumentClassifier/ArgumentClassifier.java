@@ -2,17 +2,21 @@ package withPerceptronClassifier.argumentClassifier;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 
-import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.classify.Dataset;
+import edu.stanford.nlp.ling.BasicDatum;
+import edu.stanford.nlp.util.Index;
 
 import util.CorpusUtils;
+import util.Sentence;
+import util.TokenData;
 import withPerceptronClassifier.classify.PerceptronClassifier;
 
 public abstract class ArgumentClassifier {
@@ -21,96 +25,200 @@ public abstract class ArgumentClassifier {
 	
 	protected PerceptronClassifier classifier;
 	
+	/*
+	 * The classifier's labels by id, and which kind of argument each is,
+	 * so the decoders can work on label ids.
+	 */
+	protected static class Labels {
+		
+		private final Index<String> index;	//the label index these were taken from
+		public final String[] names;
+		public final boolean[] nil;	//NIL
+		public final boolean[] adjunct;	//SU and the AM- modifiers
+		public final boolean[] core;	//A0 to A9
+		
+		Labels(PerceptronClassifier classifier){
+			index = classifier.labelIndex;
+			int numLabels = classifier.numLabels();
+			names = new String[numLabels];
+			nil = new boolean[numLabels];
+			adjunct = new boolean[numLabels];
+			core = new boolean[numLabels];
+			for (int i = 0; i < numLabels; i++){
+				names[i] = index.get(i);
+				nil[i] = names[i].equals("NIL");
+				adjunct[i] = names[i].equals("SU") || names[i].startsWith("AM-");
+				core[i] = names[i].matches("A[0-9]");
+			}
+		}
+		
+		public int size(){
+			return names.length;
+		}
+	}
+	
+	private volatile Labels labels;
+	
 	public ArgumentClassifier(PerceptronClassifier classifier){
 		this.classifier = classifier;
+		labels = new Labels(classifier);
+	}
+	
+	/*
+	 * The classifier's current labels. Training the classifier further can add
+	 * labels, so decoders take them from here on each call, and they are
+	 * rebuilt whenever the classifier's labels have changed.
+	 */
+	protected Labels labels(){
+		Labels labels = this.labels;
+		if (labels.index != classifier.labelIndex || labels.size() != classifier.numLabels())
+			this.labels = labels = new Labels(classifier);
+		return labels;
 	}
 
+	/*
+	 * Argument candidates are the tokens whose path up to the common ancestor
+	 * with the predicate is shorter than MAX_ARGUMENT_PATH, whose common ancestor
+	 * is fewer than MAX_PREDICATE_PATH arcs above the predicate, and whose
+	 * whole dependency path is shorter than MAX_PATH.
+	 * They are found once per predicate and kept on it, so every caller
+	 * shares the same (unmodifiable) list, in sentence order.
+	 */
+	private static final int MAX_ARGUMENT_PATH = 3;
+	private static final int MAX_PREDICATE_PATH = 5;
+	private static final int MAX_PATH = 6;
+	
 	public static List<ArgumentClassifierToken> argumentCandidates(ArgumentClassifierToken predicate){
-		List<ArgumentClassifierToken> candidates = new ArrayList<ArgumentClassifierToken>();
+		List<ArgumentClassifierToken> candidates = predicate.getArgumentCandidates();
+		if (candidates == null){
+			candidates = Collections.unmodifiableList(findArgumentCandidates(predicate));
+			predicate.setArgumentCandidates(candidates);
+		}
+		return candidates;
+	}
+	
+	/*
+	 * Walks up from the predicate one ancestor at a time and collects, below each
+	 * ancestor, the tokens close enough to it, skipping the branch that leads back
+	 * down to the predicate (those tokens have a lower common ancestor).
+	 */
+	private static List<ArgumentClassifierToken> findArgumentCandidates(ArgumentClassifierToken predicate){
+		Sentence sentence = predicate.getSentence();
+		BitSet found = new BitSet(sentence.size());
 		
-		for (ArgumentClassifierToken t : predicate.getSentenceTokens()){
-			
-			ArgumentClassifierToken ancestor = SentenceUtils.getCommonAncestor(t, predicate);
-			int argumentAncestorPathLength = SentenceUtils.ancestorPathLength(t, ancestor);
-			int predicateAncestorPathLength = SentenceUtils.ancestorPathLength(predicate, ancestor);
-			
-			if (argumentAncestorPathLength < 3 &&
-					predicateAncestorPathLength < 5 &&
-					argumentAncestorPathLength + predicateAncestorPathLength < 6)
-				candidates.add(t);
-			
+		int ancestor = predicate.sentenceIndex;
+		int pathChild = -1;	//child of ancestor on the path to the predicate
+		for (int predicatePath = 0; predicatePath < MAX_PREDICATE_PATH && ancestor >= 0; predicatePath++){
+			int maxArgumentPath = Math.min(MAX_ARGUMENT_PATH, MAX_PATH - predicatePath) - 1;
+			addSubtree(sentence, ancestor, pathChild, maxArgumentPath, found);
+			pathChild = ancestor;
+			ancestor = sentence.parent(ancestor);
 		}
 		
+		List<ArgumentClassifierToken> sentenceTokens = predicate.getSentenceTokens();
+		List<ArgumentClassifierToken> candidates = new ArrayList<ArgumentClassifierToken>(found.cardinality());
+		for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1))
+			candidates.add(sentenceTokens.get(i));
 		return candidates;
 	}
 	
+	/*
+	 * Adds token and its descendants at most depth arcs below it, except those under skippedChild.
+	 */
+	private static void addSubtree(Sentence sentence, int token, int skippedChild, int depth, BitSet found){
+		found.set(token);
+		if (depth == 0)
+			return;
+		for (int k = sentence.childrenStart(token); k < sentence.childrenEnd(token); k++){
+			int child = sentence.child(k);
+			if (child != skippedChild)
+				addSubtree(sentence, child, -1, depth - 1, found);
+		}
+	}
+	
+	/*
+	 * Builds the tokens of one sentence from its corpus column data;
+	 * the tokens are views onto a shared Sentence, which also holds the gold arguments.
+	 */
+	public static List<ArgumentClassifierToken> sentenceFromData(List<TokenData> sentenceData){
+		Sentence sentence = new Sentence(sentenceData);
+		List<ArgumentClassifierToken> sentenceTokens = new ArrayList<ArgumentClassifierToken>(sentence.size());
+		for (int i = 0; i < sentence.size(); i++)
+			sentenceTokens.add(new ArgumentClassifierToken(sentence, i, sentenceTokens));
+		
+		return sentenceTokens;
+	}
+	
+	/*
+	 * Streams the sentences of a corpus, one sentence in memory at a time.
+	 */
+	public static CorpusUtils.Corpus<ArgumentClassifierToken> sentences(String corpusLoc){
+		return CorpusUtils.sentences(corpusLoc, new CorpusUtils.SentenceConverter<ArgumentClassifierToken>(){
+			public List<ArgumentClassifierToken> convert(List<TokenData> sentenceData){
+				return sentenceFromData(sentenceData);
+			}
+		});
+	}
+	
 	public static List<List<ArgumentClassifierToken>> sentencesFromCorpus(String corpusLoc) throws IOException{
-		List<List<String[]>> sentenceData = CorpusUtils.sentenceDataFromCorpus(corpusLoc);
 		List<List<ArgumentClassifierToken>> sentences = new ArrayList<List<ArgumentClassifierToken>>();
-		List<ArgumentClassifierToken> sentenceTokens;
 		
-		for (List<String[]> sentence : sentenceData){
-			sentenceTokens = new ArrayList<ArgumentClassifierToken>();
-			List<ArgumentClassifierToken> predicates = new ArrayList<ArgumentClassifierToken>();
+		CorpusUtils.SentenceReader<ArgumentClassifierToken> reader = sentences(corpusLoc).iterator();
+		try {
+			while (reader.hasNext())
+				sentences.add(reader.next());
+		} finally {
+			reader.close();
+		}
+		
+		return sentences;
+		
+	}
+	
+	/*
+	 * Features of one argument candidate of a predicate. previousArgClass is the
+	 * gold label of the last non-NIL candidate of the same predicate, or null.
+	 */
+	protected interface CandidateFeatures {
+		Collection<String> of(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previousArgClass);
+	}
+	
+	/*
+	 * Builds a dataset in a single pass over the corpus: each sentence is read,
+	 * turned into a datum per argument candidate of each of its gold predicates,
+	 * and then let go of.
+	 */
+	protected static Dataset<String, String> dataSetFromCorpus(String corpusLoc, CandidateFeatures features){
+		
+		Dataset<String, String> dataset = new Dataset<String, String>();
+		
+		CorpusUtils.SentenceReader<ArgumentClassifierToken> reader = sentences(corpusLoc).iterator();
+		try {
+			while (reader.hasNext()){
+				List<ArgumentClassifierToken> sentence = reader.next();
 			
-			for (String[] tokenData : sentence){
-				ArgumentClassifierToken token = new ArgumentClassifierToken(	//make new token, add to list
-						tokenData[CorpusUtils.SPLIT_FORM_COLUMN],	//split_form
-						tokenData[CorpusUtils.SPLIT_LEMMA_COLUMN],	//split_lemma
-						tokenData[CorpusUtils.PPOSS_COLUMN],		//pposs
-						tokenData[CorpusUtils.DEPREL_COLUMN], 		//deprel
-						tokenData[CorpusUtils.PREDICATE_COLUMN],	//predicate role
-
-						Integer.parseInt(tokenData[CorpusUtils.PARENT_INDEX_COLUMN]) - 1,	//parent index
-						Integer.parseInt(tokenData[CorpusUtils.INDEX_COLUMN]) - 1, //this index
-						//offset by 1 because array indices are 0-based, not 1-based
-
-						sentenceTokens);		//list of sentence tokens
-						
-				sentenceTokens.add(token);
-				if(token.goldIsPredicate())
-					predicates.add(token);
+				for (ArgumentClassifierToken predicate : sentence){
+					if (!predicate.goldIsPredicate())
+						continue;
 				
-			}
-
-			for (int i = 0; i < sentence.size(); i++){
-				String[] tokenData = sentence.get(i);
-				ArgumentClassifierToken token = sentenceTokens.get(i);
-				for (int j = CorpusUtils.ARGS_START_COLUMN; j < tokenData.length; j++)	//link predicate arg to predicate
-					if (!tokenData[j].equals("_")){
-						int predicateNum = j - CorpusUtils.ARGS_START_COLUMN;
-						token.addGoldPredicate(predicates.get(predicateNum).sentenceIndex, tokenData[j]);
+					String previousArgClass = null;
+					for (ArgumentClassifierToken possibleArg : argumentCandidates(predicate))
+					{
+						String label = possibleArg.goldPredicateLabel(predicate);
+						dataset.add(new BasicDatum<String, String>(
+								features.of(predicate, possibleArg, previousArgClass),
+								label));
+						if (!label.equals("NIL"))
+							previousArgClass = label;
 					}
-			}
-			
-			
-			for (ArgumentClassifierToken t : sentenceTokens){ //link parents to children
-				if (t.parentIndex >= 0){
-					sentenceTokens.get(t.parentIndex).addChild(t.sentenceIndex);
 				}
-				t.updateAdjacentTokens();
-			}
 			
-			sentences.add(sentenceTokens);
-
+			}
+		} finally {
+			reader.close();
 		}
 		
-		return sentences;
-		
-	}
-	
-	protected static List<String> sortArgLabels(Counter<String> argCounter) {
-		List<Map.Entry<String, Double>> list = new LinkedList<Map.Entry<String, Double>>(argCounter.entrySet());
-		Collections.sort(list, new Comparator<Map.Entry<String, Double>>() {
-			public int compare(Map.Entry<String, Double> o1, Map.Entry<String, Double> o2) {
-	               return (o2.getValue())
-	              .compareTo(o1.getValue());
-	          }
-		});
-		List<String> sortedLabels = new ArrayList<String>();
-		for (Map.Entry<String, Double> entry : list)
-			sortedLabels.add(entry.getKey());
-		return sortedLabels;
+		return dataset;
 	}
 	
 	public abstract Map<ArgumentClassifierToken, String> argumentsOf(ArgumentClassifierToken predicate);
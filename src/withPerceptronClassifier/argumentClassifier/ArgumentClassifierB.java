@@ -1,14 +1,10 @@
 package withPerceptronClassifier.argumentClassifier;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Deque;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import withPerceptronClassifier.classify.PerceptronClassifier;
 
@@ -24,150 +20,16 @@ public class ArgumentClassifierB extends ArgumentClassifier{
 
 	public static Collection<String> getFeatures(ArgumentClassifierToken predicate,
 			ArgumentClassifierToken argument, String prevArgClass){
-		
-		if (!argument.getSentenceTokens().equals(predicate.getSentenceTokens()))
-			return null;
-		
-		Collection<String> features = new ArrayList<String>();
-
-		/*
-		 * Feature 1: argument (and modifier), predicate split lemma, form; pposs
-		 */
-		features.add("argsplm|" + argument.splitLemma);
-		features.add("argspfm|" + argument.splitForm);
-		features.add("argppos|" + argument.pposs);
-		features.add("predsplm|" + predicate.splitLemma);
-		features.add("predspfm|" + predicate.splitForm);
-		features.add("predppos|" + predicate.pposs);
-		
-		ArgumentClassifierToken pmod = argument.getPMOD();
-		if (pmod != null){
-			features.add("pmodsplm|" + pmod.splitLemma);
-			features.add("pmodspfm|" + pmod.splitForm);
-			features.add("pmodppos|" + pmod.pposs);
-		}
-		
-		/*
-		 * Feature 2: pposs/deprel for predicate children, children of predicate ancestor across VC/IM dependencies
-		 */
-		StringBuilder deprelFeature = new StringBuilder("predcdeprel|");
-		StringBuilder ppossFeature = new StringBuilder("predcpposs|");
-		for (ArgumentClassifierToken child : predicate.getChildren()){
-			deprelFeature.append(child.deprel + " ");
-			ppossFeature.append(child.pposs + " ");
-		}
-		features.add(deprelFeature.toString());
-		features.add(ppossFeature.toString());
-		
-		deprelFeature = new StringBuilder("vcimdeprel|");
-		ppossFeature = new StringBuilder("vcimpposs|");
-		ArgumentClassifierToken vcimAncestor = predicate;
-		while(vcimAncestor.deprel.equals("VC") || vcimAncestor.deprel.equals("IM"))
-			vcimAncestor = (ArgumentClassifierToken) vcimAncestor.getParent();
-		
-		for (ArgumentClassifierToken ancestorChild : vcimAncestor.getChildren()){
-			deprelFeature.append(" " + ancestorChild.deprel);
-			ppossFeature.append(" " + ancestorChild.pposs);
-			if (ancestorChild.equals(argument)){
-				deprelFeature.append("a");
-				ppossFeature.append("a");
-			}
-			else if (ancestorChild.equals(predicate)){
-				deprelFeature.append("p");
-				ppossFeature.append("p");
-			}
-		}
-		features.add(deprelFeature.toString());
-		features.add(ppossFeature.toString());
-		
-		
-		
-		/*
-		 * Feature 3: dependency path
-		 */
-		StringBuilder path = new StringBuilder();
-		
-		/*
-		 * Ancestor splits the path into two halves: 
-		 * from the argument to the ancestor, the dependencies go upwards;
-		 * from the predicate to the ancestor, the dependencies go downwards
-		 */
-		ArgumentClassifierToken ancestor = SentenceUtils.getCommonAncestor(argument, predicate);
-		
-		Deque<ArgumentClassifierToken> argPath = SentenceUtils.ancestorPath(argument, ancestor);
-		Deque<ArgumentClassifierToken> predPath = SentenceUtils.ancestorPath(predicate, ancestor);
-
-		argPath.removeLast(); //ancestor is last thing in both pathA and pathB, don't need it's deprel
-		predPath.removeLast();
-		
-		while(!argPath.isEmpty())	//argPath is (upward) path from argument to ancestor
-			path.append(argPath.removeFirst().deprel + "^ ");
-		while(!predPath.isEmpty())	//predPath is (downwards) path from predicate to ancestor
-			path.append(predPath.removeLast().deprel + "v ");
-		
-		features.add("path|" + path.toString());
-		features.add("pathpos|" + argument.pposs + " " + path.toString() + predicate.pposs);	//with pposs tags
-		features.add("pathlem|" + argument.splitLemma + " " + path.toString() + predicate.splitLemma);	//with splm tagss
-
-		
-		/*
-		 * Feature 4: length of dependency path
-		 */
-		features.add("pathlength|" + SentenceUtils.dependencyPathLength(predicate, argument));
-		
-		/*
-		 * Feature 5: difference in positions, and binary tokens
-		 */
-		int distance = Math.abs(predicate.sentenceIndex - argument.sentenceIndex);
-		features.add("distance|" + distance);
-		features.add("distance=1|" + (distance==1?"true":"false"));
-		features.add("distance=2|" + (distance==2?"true":"false"));
-		features.add("distance>2|" + (distance>2?"true":"false"));
-		
-		/*
-		 * Feature 6: predicate before or after argument
-		 */
-		features.add("predrelpos|" + ((predicate.sentenceIndex < argument.sentenceIndex) ? "before" : "after"));
-		
-		//Feature for previous argument
-		if (prevArgClass != null)
-			features.add("previousArgClass:" + prevArgClass);
-		else
-			features.add("previousArgClass:NIL");
-		
-		return features;
+		return FeatureTemplates.ARGUMENT_AND_PREVIOUS.features(predicate, argument, prevArgClass);
 	}
 	
 	public static Dataset<String, String> dataSetFromCorpus(String corpusLoc) throws IOException{
-		
-		Dataset<String, String> dataset = new Dataset<String, String>();
-		List<List<ArgumentClassifierToken>> sentences = sentencesFromCorpus(corpusLoc);
-		
-		while (!sentences.isEmpty()){
-			
-			List<ArgumentClassifierToken> sentence = sentences.remove(0);
-			List<ArgumentClassifierToken> predicates = new ArrayList<ArgumentClassifierToken>();
-			for (ArgumentClassifierToken token : sentence){
-				if (token.goldIsPredicate())
-					predicates.add(token);
-			}
-			
-			for (ArgumentClassifierToken predicate : predicates){
-				String previousArgClass = null;
-				for (ArgumentClassifierToken possibleArg : argumentCandidates(predicate))
-				{
-					String label = possibleArg.goldPredicateLabel(predicate);
-					dataset.add(new BasicDatum<String, String>(
-							getFeatures(predicate, possibleArg, previousArgClass),
-							label));
-					if (!label.equals("NIL"))
-						previousArgClass = label;
-				}
+		return dataSetFromCorpus(corpusLoc, new CandidateFeatures(){
+			public Collection<String> of(ArgumentClassifierToken predicate,
+					ArgumentClassifierToken argument, String previousArgClass){
+				return getFeatures(predicate, argument, previousArgClass);
 			}
-			
-		}
-		
-		return dataset;
+		});
 	}
 	
 	public String argClass(ArgumentClassifierToken argument, ArgumentClassifierToken predicate, String previousArgClass){
@@ -179,39 +41,43 @@ public class ArgumentClassifierB extends ArgumentClassifier{
 	}
 	
 	public Map<ArgumentClassifierToken, String> argumentsOf(ArgumentClassifierToken predicate){
+		Labels labels = labels();
 		String previousArgClass = null;
 		
 		Map<ArgumentClassifierToken, String> argumentLinks = new LinkedHashMap<ArgumentClassifierToken, String>();
-		Set<String> previousLabels = new HashSet<String>();
-		Set<Integer> restrictedArgs = new HashSet<Integer>();
+		boolean[] previousLabels = new boolean[labels.size()];
+		BitSet restrictedArgs = new BitSet();	//ancestors and descendants of accepted core arguments
+		double[] argClassProbabilities = new double[labels.size()];
+		FeatureTemplates.KeyBuffer keyBuffer = new FeatureTemplates.KeyBuffer(FeatureTemplates.ARGUMENT_AND_PREVIOUS);
 		
 		nextArgument:
 		for (ArgumentClassifierToken argument : argumentCandidates(predicate)){	
 			
-			Counter<String> argClassProbabilities = argClassScores(argument, predicate, previousArgClass);
+			FeatureTemplates.ARGUMENT_AND_PREVIOUS.scores(classifier, predicate, argument, previousArgClass, keyBuffer, argClassProbabilities);
 			
-			for (String label : sortArgLabels(argClassProbabilities)){
-				if (label.equals("NIL")){
-					argumentLinks.put(argument, label);
+			for (int label = PerceptronClassifier.nextBestLabel(argClassProbabilities, -1); label >= 0;
+					label = PerceptronClassifier.nextBestLabel(argClassProbabilities, label)){
+				if (labels.nil[label]){
+					argumentLinks.put(argument, labels.names[label]);
 					continue nextArgument;
 				}
 				
-				if (previousLabels.contains(label))
+				if (previousLabels[label])
 					continue;
 				
-				if (label.equals("SU") || label.startsWith("AM-")){
-					argumentLinks.put(argument, label);
-					previousArgClass = label;
+				if (labels.adjunct[label]){
+					argumentLinks.put(argument, labels.names[label]);
+					previousArgClass = labels.names[label];
 					continue nextArgument;
 				}
 				
-				if (!restrictedArgs.contains(argument.sentenceIndex)){
-					restrictedArgs.addAll(argument.getAncestorIndices());
-					restrictedArgs.addAll(argument.getDescendantIndices());
-					argumentLinks.put(argument, label);
-					previousArgClass = label;
-					if(label.matches("A[0-9]"))
-						previousLabels.add(label);
+				if (!restrictedArgs.get(argument.sentenceIndex)){
+					restrictedArgs.or(argument.getAncestors());
+					restrictedArgs.or(argument.getDescendants());
+					argumentLinks.put(argument, labels.names[label]);
+					previousArgClass = labels.names[label];
+					if(labels.core[label])
+						previousLabels[label] = true;
 					continue nextArgument;
 				}
 			}
@@ -1,38 +1,40 @@
 package withPerceptronClassifier.argumentClassifier;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 
+import util.Sentence;
 import withPerceptronClassifier.predicateClassifier.FeaturedPredicateToken;
 
 public class ArgumentClassifierToken extends FeaturedPredicateToken{
 	
-	private Map<Integer, String> goldLabels = new HashMap<Integer, String>();
-
-	public ArgumentClassifierToken(String splitForm, String splitLemma,
-			String pposs, String deprel, String predicateRole, int parentIndex,
-			int sentenceIndex, List<ArgumentClassifierToken> sentenceTokens) {
-		super(splitForm, splitLemma, pposs, deprel, predicateRole, parentIndex,
-				sentenceIndex, sentenceTokens);
+	private List<ArgumentClassifierToken> argumentCandidates;	//when this token is a predicate; see ArgumentClassifier.argumentCandidates
+	
+	public ArgumentClassifierToken(Sentence sentence, int sentenceIndex,
+			List<ArgumentClassifierToken> sentenceTokens) {
+		super(sentence, sentenceIndex, sentenceTokens);
 	}
 
 	public ArgumentClassifierToken getPMOD() {
-		for (Integer i : childrenIndices)
-			if (sentenceTokens.get(i).deprel.startsWith("PMOD"))
-				return (ArgumentClassifierToken) sentenceTokens.get(i);
+		for (int k = sentence.childrenStart(sentenceIndex); k < sentence.childrenEnd(sentenceIndex); k++)
+			if (sentence.deprel(sentence.child(k)).startsWith("PMOD"))
+				return (ArgumentClassifierToken) sentenceTokens.get(sentence.child(k));
 		return null;
 	}
 	
-	public void addGoldPredicate(int predicateIndex, String label){
-		goldLabels.put(predicateIndex, label);
+	List<ArgumentClassifierToken> getArgumentCandidates(){
+		return argumentCandidates;
+	}
+	
+	void setArgumentCandidates(List<ArgumentClassifierToken> argumentCandidates){
+		this.argumentCandidates = argumentCandidates;
 	}
 	
 	public String goldPredicateLabel(ArgumentClassifierToken predicate){
-		String label = goldLabels.get(predicate.sentenceIndex);
+		String label = sentence.goldLabel(sentenceIndex, predicate.sentenceIndex);
 		if (label == null)
 			return "NIL";
 		return label;
@@ -44,9 +46,9 @@ public class ArgumentClassifierToken extends FeaturedPredicateToken{
 	}
 	
 	public List<ArgumentClassifierToken> getChildren(){
-		List<ArgumentClassifierToken> children = new ArrayList<ArgumentClassifierToken>();
-		for (Integer index : childrenIndices)
-			children.add((ArgumentClassifierToken) sentenceTokens.get(index));
+		List<ArgumentClassifierToken> children = new ArrayList<ArgumentClassifierToken>(numChildren());
+		for (int k = sentence.childrenStart(sentenceIndex); k < sentence.childrenEnd(sentenceIndex); k++)
+			children.add((ArgumentClassifierToken) sentenceTokens.get(sentence.child(k)));
 		
 		return children;
 	}
@@ -78,26 +80,31 @@ public class ArgumentClassifierToken extends FeaturedPredicateToken{
 		return null;
 	}
 	
+	/*
+	 * Descendants and ancestors come from the sentence's TreeIndex,
+	 * which builds each set once; the returned sets are shared and must not be modified.
+	 */
+	public BitSet getDescendants(){
+		return sentence.tree().descendants(sentenceIndex);
+	}
+	
+	public BitSet getAncestors(){
+		return sentence.tree().ancestors(sentenceIndex);
+	}
+	
 	public Collection<Integer> getDescendantIndices(){
-		Collection<Integer> descendantIndices = new HashSet<Integer>();
-		for (Integer i : childrenIndices){
-			ArgumentClassifierToken child = (ArgumentClassifierToken) sentenceTokens.get(i);
-			descendantIndices.add(i);
-			descendantIndices.addAll(child.getDescendantIndices());
-		}
-		return descendantIndices;
+		return indicesOf(getDescendants());
 	}
 	
 	public Collection<Integer> getAncestorIndices(){
-		Collection<Integer> ancestorIndices = new HashSet<Integer>();
-		ArgumentClassifierToken ancestor = this;
-		while (ancestor.parentIndex >= 0){
-			ancestorIndices.add(ancestor.parentIndex);
-			ancestor = (ArgumentClassifierToken) ancestor.getParent();
-		}
-		return ancestorIndices;
+		return indicesOf(getAncestors());
 	}
 	
-	
+	private static Collection<Integer> indicesOf(BitSet set){
+		Collection<Integer> indices = new HashSet<Integer>();
+		for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1))
+			indices.add(i);
+		return indices;
+	}
 	
 }
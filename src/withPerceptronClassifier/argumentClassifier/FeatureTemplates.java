@@ -0,0 +1,496 @@
+package withPerceptronClassifier.argumentClassifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import util.Sentence;
+import withPerceptronClassifier.classify.FeatureHasher;
+import withPerceptronClassifier.classify.PerceptronClassifier;
+
+/*
+ * The features of a candidate argument of a predicate, declared as templates:
+ * text with {attribute} placeholders, e.g. "pathpos|{arg.pos} {path}{pred.pos}",
+ * one feature per template. The templates are compiled once into extractors
+ * that read the attributes straight from the Sentence, so a candidate's
+ * features can be had either as strings (for building datasets) or as the
+ * FeatureHasher keys of those strings, computed from the interned attribute
+ * values without building any String (for decoding, see scores). Either way they are the
+ * same features, so models don't depend on which one they were trained with.
+ *
+ * Attributes: arg.*, pred.* and pmod.* (the argument's first PMOD child; the
+ * template is left out if there is none) with lemma, form and pos;
+ * pred.children.deprel and pred.children.pos, each child's followed by a space;
+ * vcim.children.deprel and vcim.children.pos, for the children of the predicate's
+ * ancestor across VC/IM dependencies, each preceded by a space and followed by
+ * "a" for the argument and "p" for the predicate; path, the deprels from the
+ * argument up to the common ancestor, each followed by "^ ", then down to the
+ * predicate, each followed by "v "; pathlength; distance; distance=1, distance=2
+ * and distance>2 (true or false); predrelpos (before or after the argument);
+ * and previous, the class of the previous argument (NIL if none).
+ */
+public class FeatureTemplates {
+
+	/*
+	 * The features of ArgumentClassifierA and C.
+	 */
+	public static final FeatureTemplates ARGUMENT = new FeatureTemplates(
+			"argsplm|{arg.lemma}",
+			"argspfm|{arg.form}",
+			"argppos|{arg.pos}",
+			"predsplm|{pred.lemma}",
+			"predspfm|{pred.form}",
+			"predppos|{pred.pos}",
+			"pmodsplm|{pmod.lemma}",
+			"pmodspfm|{pmod.form}",
+			"pmodppos|{pmod.pos}",
+			"predcdeprel|{pred.children.deprel}",
+			"predcpposs|{pred.children.pos}",
+			"vcimdeprel|{vcim.children.deprel}",
+			"vcimpposs|{vcim.children.pos}",
+			"path|{path}",
+			"pathpos|{arg.pos} {path}{pred.pos}",
+			"pathlem|{arg.lemma} {path}{pred.lemma}",
+			"pathlength|{pathlength}",
+			"distance|{distance}",
+			"distance=1|{distance=1}",
+			"distance=2|{distance=2}",
+			"distance>2|{distance>2}",
+			"predrelpos|{predrelpos}");
+
+	/*
+	 * The features of ArgumentClassifierB: ARGUMENT's and the previous argument's class.
+	 */
+	public static final FeatureTemplates ARGUMENT_AND_PREVIOUS = ARGUMENT.and(
+			"previousArgClass:{previous}");
+
+	private final String[] templates;
+	private final Object[][] parts;	//per template, its literal Strings and Attributes in order
+
+	public FeatureTemplates(String... templates){
+		this.templates = templates.clone();
+		parts = new Object[templates.length][];
+		for (int t = 0; t < templates.length; t++)
+			parts[t] = compile(templates[t]);
+	}
+
+	/*
+	 * These templates followed by more.
+	 */
+	public FeatureTemplates and(String... moreTemplates){
+		String[] all = Arrays.copyOf(templates, templates.length + moreTemplates.length);
+		System.arraycopy(moreTemplates, 0, all, templates.length, moreTemplates.length);
+		return new FeatureTemplates(all);
+	}
+
+	private static Object[] compile(String template){
+		List<Object> parts = new ArrayList<Object>();
+		int start = 0;
+		while (start < template.length()){
+			int open = template.indexOf('{', start);
+			if (open < 0){
+				parts.add(template.substring(start));
+				break;
+			}
+			int close = template.indexOf('}', open);
+			if (close < 0)
+				throw new IllegalArgumentException("unclosed placeholder in feature template " + template);
+			if (open > start)
+				parts.add(template.substring(start, open));
+			parts.add(Attribute.named(template.substring(open + 1, close)));
+			start = close + 1;
+		}
+		return parts.toArray();
+	}
+
+	/*
+	 * The most features a candidate can have: one per template.
+	 */
+	public int size(){
+		return templates.length;
+	}
+
+	/*
+	 * The features of argument as a candidate argument of predicate, in template
+	 * order, or null if they aren't in the same sentence. previousArgClass is only
+	 * used by the previous attribute.
+	 */
+	public Collection<String> features(ArgumentClassifierToken predicate,
+			ArgumentClassifierToken argument, String previousArgClass){
+		if (argument.getSentence() != predicate.getSentence())
+			return null;
+
+		Collection<String> features = new ArrayList<String>(parts.length);
+		TextSink text = new TextSink();
+		for (Object[] template : parts){
+			text.builder.setLength(0);
+			if (extract(template, predicate, argument, previousArgClass, text))
+				features.add(text.builder.toString());
+		}
+		return features;
+	}
+
+	/*
+	 * Reusable space for the keys of one candidate's features at a time: the
+	 * FeatureHasher.KeyBuilder that computes them, the keys, and the feature ids
+	 * PerceptronClassifier.scores looks them up into. Made once per decoding
+	 * call (or thread) and reused for every candidate, by one thread at a time.
+	 */
+	public static final class KeyBuffer {
+
+		private final KeySink sink;
+		public final long[] keys;
+		private final int[] featureIds;
+
+		public KeyBuffer(FeatureTemplates templates){
+			this(templates, new FeatureHasher.KeyBuilder());
+		}
+
+		public KeyBuffer(FeatureTemplates templates, FeatureHasher.KeyBuilder builder){
+			sink = new KeySink(builder);
+			keys = new long[templates.size()];
+			featureIds = new int[templates.size()];
+		}
+	}
+
+	/*
+	 * Puts the FeatureHasher keys of the features (see features) in buffer.keys
+	 * and returns how many there are. buffer must have been made for templates
+	 * of at least this size().
+	 */
+	public int keys(ArgumentClassifierToken predicate,
+			ArgumentClassifierToken argument, String previousArgClass, KeyBuffer buffer){
+		if (buffer.keys.length < parts.length)
+			throw new IllegalArgumentException("key buffer for " + buffer.keys.length + " features, not " + parts.length);
+		if (argument.getSentence() != predicate.getSentence())
+			return 0;
+
+		KeySink key = buffer.sink;
+		int count = 0;
+		for (Object[] template : parts){
+			key.builder.start();
+			if (extract(template, predicate, argument, previousArgClass, key))
+				buffer.keys[count++] = key.builder.key();
+		}
+		return count;
+	}
+
+	/*
+	 * Fills scores, which must have classifier.numLabels() entries, with the
+	 * classifier's label scores for the candidate: from the keys of its features,
+	 * without building them, or from the feature strings for a model that can't
+	 * look features up by key.
+	 */
+	public void scores(PerceptronClassifier classifier, ArgumentClassifierToken predicate,
+			ArgumentClassifierToken argument, String previousArgClass, KeyBuffer buffer, double[] scores){
+		if (classifier.findsFeaturesByKey()){
+			int count = keys(predicate, argument, previousArgClass, buffer);
+			classifier.scores(buffer.keys, count, buffer.featureIds, scores);
+		}
+		else
+			classifier.scores(features(predicate, argument, previousArgClass), scores);
+	}
+
+	/*
+	 * Appends a template's feature to sink; false if one of its attributes has no value.
+	 */
+	private static boolean extract(Object[] template, ArgumentClassifierToken predicate,
+			ArgumentClassifierToken argument, String previousArgClass, Sink sink){
+		for (Object part : template){
+			if (part instanceof String)
+				sink.append((String) part);
+			else if (!((Attribute) part).append(predicate, argument, previousArgClass, sink))
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Where an extractor writes a feature to, with scratch space for the
+	 * extractors, so that extracting a candidate's features allocates nothing
+	 * once the sink is reused.
+	 */
+	private abstract static class Sink {
+
+		private int[] path = new int[16];
+
+		abstract void append(String s);
+
+		abstract void append(char c);
+
+		abstract void append(int i);
+
+		/*
+		 * Scratch space for the tokens of a path of the given length.
+		 */
+		int[] path(int length){
+			if (path.length < length)
+				path = new int[Math.max(length, 2 * path.length)];
+			return path;
+		}
+	}
+
+	private static class TextSink extends Sink {
+
+		final StringBuilder builder = new StringBuilder();
+
+		public void append(String s){
+			builder.append(s);
+		}
+
+		public void append(char c){
+			builder.append(c);
+		}
+
+		public void append(int i){
+			builder.append(i);
+		}
+	}
+
+	private static class KeySink extends Sink {
+
+		final FeatureHasher.KeyBuilder builder;
+
+		KeySink(FeatureHasher.KeyBuilder builder){
+			this.builder = builder;
+		}
+
+		public void append(String s){
+			builder.append(s);
+		}
+
+		public void append(char c){
+			builder.append(c);
+		}
+
+		public void append(int i){
+			builder.append(i);
+		}
+	}
+
+	private enum Attribute {
+
+		ARG_LEMMA("arg.lemma") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				sink.append(argument.getSentence().splitLemma(argument.sentenceIndex));
+				return true;
+			}
+		},
+		ARG_FORM("arg.form") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				sink.append(argument.getSentence().splitForm(argument.sentenceIndex));
+				return true;
+			}
+		},
+		ARG_POS("arg.pos") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				sink.append(argument.getSentence().pposs(argument.sentenceIndex));
+				return true;
+			}
+		},
+		PRED_LEMMA("pred.lemma") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				sink.append(predicate.getSentence().splitLemma(predicate.sentenceIndex));
+				return true;
+			}
+		},
+		PRED_FORM("pred.form") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				sink.append(predicate.getSentence().splitForm(predicate.sentenceIndex));
+				return true;
+			}
+		},
+		PRED_POS("pred.pos") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				sink.append(predicate.getSentence().pposs(predicate.sentenceIndex));
+				return true;
+			}
+		},
+		PMOD_LEMMA("pmod.lemma") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				ArgumentClassifierToken pmod = argument.getPMOD();
+				if (pmod == null)
+					return false;
+				sink.append(pmod.splitLemma);
+				return true;
+			}
+		},
+		PMOD_FORM("pmod.form") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				ArgumentClassifierToken pmod = argument.getPMOD();
+				if (pmod == null)
+					return false;
+				sink.append(pmod.splitForm);
+				return true;
+			}
+		},
+		PMOD_POS("pmod.pos") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				ArgumentClassifierToken pmod = argument.getPMOD();
+				if (pmod == null)
+					return false;
+				sink.append(pmod.pposs);
+				return true;
+			}
+		},
+		PRED_CHILDREN_DEPREL("pred.children.deprel") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				Sentence sentence = predicate.getSentence();
+				for (int k = sentence.childrenStart(predicate.sentenceIndex); k < sentence.childrenEnd(predicate.sentenceIndex); k++){
+					sink.append(sentence.deprel(sentence.child(k)));
+					sink.append(' ');
+				}
+				return true;
+			}
+		},
+		PRED_CHILDREN_POS("pred.children.pos") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				Sentence sentence = predicate.getSentence();
+				for (int k = sentence.childrenStart(predicate.sentenceIndex); k < sentence.childrenEnd(predicate.sentenceIndex); k++){
+					sink.append(sentence.pposs(sentence.child(k)));
+					sink.append(' ');
+				}
+				return true;
+			}
+		},
+		VCIM_CHILDREN_DEPREL("vcim.children.deprel") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				Sentence sentence = predicate.getSentence();
+				int ancestor = vcimAncestor(sentence, predicate.sentenceIndex);
+				for (int k = sentence.childrenStart(ancestor); k < sentence.childrenEnd(ancestor); k++){
+					int child = sentence.child(k);
+					sink.append(' ');
+					sink.append(sentence.deprel(child));
+					appendRole(child, predicate, argument, sink);
+				}
+				return true;
+			}
+		},
+		VCIM_CHILDREN_POS("vcim.children.pos") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				Sentence sentence = predicate.getSentence();
+				int ancestor = vcimAncestor(sentence, predicate.sentenceIndex);
+				for (int k = sentence.childrenStart(ancestor); k < sentence.childrenEnd(ancestor); k++){
+					int child = sentence.child(k);
+					sink.append(' ');
+					sink.append(sentence.pposs(child));
+					appendRole(child, predicate, argument, sink);
+				}
+				return true;
+			}
+		},
+		PATH("path") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				Sentence sentence = predicate.getSentence();
+				int ancestor = sentence.tree().commonAncestor(argument.sentenceIndex, predicate.sentenceIndex);
+				if (ancestor < 0)
+					return false;
+
+				for (int i = argument.sentenceIndex; i != ancestor; i = sentence.parent(i)){	//upwards from the argument
+					sink.append(sentence.deprel(i));
+					sink.append("^ ");
+				}
+				//downwards to the predicate: collected upwards from it, then appended in reverse
+				int[] path = sink.path(sentence.tree().ancestorPathLength(predicate.sentenceIndex, ancestor));
+				int length = 0;
+				for (int i = predicate.sentenceIndex; i != ancestor; i = sentence.parent(i))
+					path[length++] = i;
+				while (length > 0){
+					sink.append(sentence.deprel(path[--length]));
+					sink.append("v ");
+				}
+				return true;
+			}
+		},
+		PATH_LENGTH("pathlength") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				sink.append(predicate.getSentence().tree().pathLength(predicate.sentenceIndex, argument.sentenceIndex));
+				return true;
+			}
+		},
+		DISTANCE("distance") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				sink.append(distance(predicate, argument));
+				return true;
+			}
+		},
+		DISTANCE_1("distance=1") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				sink.append(distance(predicate, argument) == 1 ? "true" : "false");
+				return true;
+			}
+		},
+		DISTANCE_2("distance=2") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				sink.append(distance(predicate, argument) == 2 ? "true" : "false");
+				return true;
+			}
+		},
+		DISTANCE_ABOVE_2("distance>2") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				sink.append(distance(predicate, argument) > 2 ? "true" : "false");
+				return true;
+			}
+		},
+		PREDICATE_POSITION("predrelpos") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				sink.append(predicate.sentenceIndex < argument.sentenceIndex ? "before" : "after");
+				return true;
+			}
+		},
+		PREVIOUS("previous") {
+			boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink){
+				sink.append(previous != null ? previous : "NIL");
+				return true;
+			}
+		};
+
+		private static final Map<String, Attribute> BY_NAME = new HashMap<String, Attribute>();
+		static {
+			for (Attribute attribute : values())
+				BY_NAME.put(attribute.placeholder, attribute);
+		}
+
+		private final String placeholder;
+
+		Attribute(String placeholder){
+			this.placeholder = placeholder;
+		}
+
+		static Attribute named(String name){
+			Attribute attribute = BY_NAME.get(name);
+			if (attribute == null)
+				throw new IllegalArgumentException("unknown feature template attribute " + name);
+			return attribute;
+		}
+
+		/*
+		 * Appends the attribute's value for the candidate to sink; false if it has none.
+		 */
+		abstract boolean append(ArgumentClassifierToken predicate, ArgumentClassifierToken argument, String previous, Sink sink);
+
+		private static int distance(ArgumentClassifierToken predicate, ArgumentClassifierToken argument){
+			return Math.abs(predicate.sentenceIndex - argument.sentenceIndex);
+		}
+
+		/*
+		 * The ancestor of token i across VC and IM dependencies.
+		 */
+		private static int vcimAncestor(Sentence sentence, int i){
+			while ((sentence.deprel(i).equals("VC") || sentence.deprel(i).equals("IM")) && sentence.parent(i) >= 0)
+				i = sentence.parent(i);
+			return i;
+		}
+
+		private static void appendRole(int child, ArgumentClassifierToken predicate, ArgumentClassifierToken argument, Sink sink){
+			if (child == argument.sentenceIndex)
+				sink.append('a');
+			else if (child == predicate.sentenceIndex)
+				sink.append('p');
+		}
+	}
+
+}
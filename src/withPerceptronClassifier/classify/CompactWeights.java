@@ -0,0 +1,159 @@
+package withPerceptronClassifier.classify;
+
+import java.io.Serializable;
+
+/*
+ * Inference-only averaged weights in a smaller type than double, in the same
+ * feature-major order as WeightMatrix. The training weights are not kept.
+ * Quantized weights store round(weight / scale) with one scale per label,
+ * chosen so the label's largest weight just fits.
+ */
+abstract class CompactWeights implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	final int numFeatures;
+	final int numLabels;
+
+	CompactWeights(int numFeatures, int numLabels){
+		this.numFeatures = numFeatures;
+		this.numLabels = numLabels;
+	}
+
+	/*
+	 * Fills scores[label] with the sum of label's weights for the features in [from, to).
+	 */
+	abstract void scores(int[] featureIndices, int from, int to, double[] scores);
+
+	/*
+	 * Bytes taken by the weights.
+	 */
+	abstract long byteSize();
+
+	/*
+	 * The averaged weights of the given rows (features) of a matrix, in the given precision.
+	 */
+	static CompactWeights of(WeightMatrix matrix, int[] rows, PerceptronClassifier.Precision precision){
+		switch (precision){
+		case FLOAT:
+			return new FloatWeights(matrix, rows);
+		case SHORT:
+			return new ShortWeights(matrix, rows);
+		case BYTE:
+			return new ByteWeights(matrix, rows);
+		default:
+			throw new IllegalArgumentException("no compact weights in " + precision + " precision");
+		}
+	}
+
+	/*
+	 * The scale per label that maps the label's largest absolute weight to maxValue.
+	 */
+	static double[] labelScales(WeightMatrix matrix, int[] rows, int maxValue){
+		double[] scales = new double[matrix.numLabels];
+		for (int row : rows){
+			int block = row * matrix.numLabels;
+			for (int label = 0; label < matrix.numLabels; label++)
+				scales[label] = Math.max(scales[label], Math.abs(matrix.avgWeights[block + label]));
+		}
+		for (int label = 0; label < scales.length; label++)
+			scales[label] = scales[label] > 0 ? scales[label] / maxValue : 1;
+		return scales;
+	}
+
+	static class FloatWeights extends CompactWeights {
+
+		private static final long serialVersionUID = 1L;
+
+		private final float[] weights;
+
+		FloatWeights(WeightMatrix matrix, int[] rows){
+			super(rows.length, matrix.numLabels);
+			weights = new float[rows.length * numLabels];
+			for (int f = 0; f < rows.length; f++)
+				for (int label = 0; label < numLabels; label++)
+					weights[f * numLabels + label] = (float) matrix.avgWeights[rows[f] * numLabels + label];
+		}
+
+		void scores(int[] featureIndices, int from, int to, double[] scores){
+			for (int label = 0; label < numLabels; label++)
+				scores[label] = 0;
+			for (int k = from; k < to; k++){
+				int block = featureIndices[k] * numLabels;
+				for (int label = 0; label < numLabels; label++)
+					scores[label] += weights[block + label];
+			}
+		}
+
+		long byteSize(){
+			return 4L * weights.length;
+		}
+	}
+
+	static class ShortWeights extends CompactWeights {
+
+		private static final long serialVersionUID = 1L;
+
+		private final short[] weights;
+		private final double[] scales;
+
+		ShortWeights(WeightMatrix matrix, int[] rows){
+			super(rows.length, matrix.numLabels);
+			scales = labelScales(matrix, rows, Short.MAX_VALUE);
+			weights = new short[rows.length * numLabels];
+			for (int f = 0; f < rows.length; f++)
+				for (int label = 0; label < numLabels; label++)
+					weights[f * numLabels + label] = (short) Math.round(matrix.avgWeights[rows[f] * numLabels + label] / scales[label]);
+		}
+
+		void scores(int[] featureIndices, int from, int to, double[] scores){
+			for (int label = 0; label < numLabels; label++)
+				scores[label] = 0;
+			for (int k = from; k < to; k++){
+				int block = featureIndices[k] * numLabels;
+				for (int label = 0; label < numLabels; label++)
+					scores[label] += weights[block + label];
+			}
+			for (int label = 0; label < numLabels; label++)
+				scores[label] *= scales[label];
+		}
+
+		long byteSize(){
+			return 2L * weights.length + 8L * scales.length;
+		}
+	}
+
+	static class ByteWeights extends CompactWeights {
+
+		private static final long serialVersionUID = 1L;
+
+		private final byte[] weights;
+		private final double[] scales;
+
+		ByteWeights(WeightMatrix matrix, int[] rows){
+			super(rows.length, matrix.numLabels);
+			scales = labelScales(matrix, rows, Byte.MAX_VALUE);
+			weights = new byte[rows.length * numLabels];
+			for (int f = 0; f < rows.length; f++)
+				for (int label = 0; label < numLabels; label++)
+					weights[f * numLabels + label] = (byte) Math.round(matrix.avgWeights[rows[f] * numLabels + label] / scales[label]);
+		}
+
+		void scores(int[] featureIndices, int from, int to, double[] scores){
+			for (int label = 0; label < numLabels; label++)
+				scores[label] = 0;
+			for (int k = from; k < to; k++){
+				int block = featureIndices[k] * numLabels;
+				for (int label = 0; label < numLabels; label++)
+					scores[label] += weights[block + label];
+			}
+			for (int label = 0; label < numLabels; label++)
+				scores[label] *= scales[label];
+		}
+
+		long byteSize(){
+			return weights.length + 8L * scales.length;
+		}
+	}
+
+}
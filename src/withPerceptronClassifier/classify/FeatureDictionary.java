@@ -0,0 +1,21 @@
+package withPerceptronClassifier.classify;
+
+/*
+ * An immutable map from feature strings to weight ids, used in place of
+ * the feature Index by models that are only used for classification.
+ */
+interface FeatureDictionary {
+
+	/*
+	 * The id of feature, or -1 if it isn't in the dictionary.
+	 */
+	int indexOf(String feature);
+
+	/*
+	 * The id of the feature whose FeatureHasher.key is key, or -1 if it isn't in the dictionary.
+	 */
+	int indexOf(long key);
+
+	int size();
+
+}
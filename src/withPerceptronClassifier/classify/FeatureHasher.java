@@ -0,0 +1,167 @@
+package withPerceptronClassifier.classify;
+
+/*
+ * MurmurHash3 (x86, 32-bit) over the UTF-16 chars of a feature string,
+ * two chars per block, so hashing needs no encoding and no allocation.
+ * Used by the hashed feature mode of PerceptronClassifier, where feature
+ * strings are mapped straight into a fixed 2^k weight space.
+ */
+public final class FeatureHasher {
+
+	private static final int SEED = 0x9747b28c;
+	private static final int KEY_SEED = 0x3c6ef372;	//for the low half of a key
+
+	private static final int C1 = 0xcc9e2d51;
+	private static final int C2 = 0x1b873593;
+
+	private FeatureHasher(){
+	}
+
+	public static int hash(CharSequence s){
+		return hash(s, SEED);
+	}
+
+	public static int hash(CharSequence s, int seed){
+		int h = seed;
+		int length = s.length();
+		int i = 0;
+		for (; i + 1 < length; i += 2)
+			h = mixHash(h, s.charAt(i) | (s.charAt(i + 1) << 16));
+		if (i < length)
+			h ^= mixBlock(s.charAt(i));
+		return finish(h, 2 * length);
+	}
+
+	/*
+	 * The weight id of a feature in a space of 2^bits weights.
+	 */
+	public static int bucket(CharSequence s, int bits){
+		return hash(s) & ((1 << bits) - 1);
+	}
+
+	/*
+	 * A 64-bit key for a feature: hash(s) in the high half and a hash with
+	 * another seed in the low half, so that distinct features of a model
+	 * practically never share a key. Keys stand in for feature strings where
+	 * the strings aren't built (see KeyBuilder).
+	 */
+	public static long key(CharSequence s){
+		return ((long) hash(s) << 32) | (hash(s, KEY_SEED) & 0xffffffffL);
+	}
+
+	/*
+	 * The weight id of the feature with the given key, the same as bucket of its string.
+	 */
+	public static int bucket(long key, int bits){
+		return (int) (key >>> 32) & ((1 << bits) - 1);
+	}
+
+	/*
+	 * Computes the key of a feature string from its pieces as they are appended,
+	 * without building the string: key() is key(s) of the concatenation s of
+	 * everything appended since start(). One builder can be reused for any
+	 * number of features, but not by two threads at once.
+	 */
+	public static final class KeyBuilder {
+
+		private final char[] digits = new char[11];
+		private int high;
+		private int low;
+		private int length;
+		private char pending;	//the first char of an unfinished block, when length is odd
+
+		public KeyBuilder start(){
+			high = SEED;
+			low = KEY_SEED;
+			length = 0;
+			return this;
+		}
+
+		public KeyBuilder append(char c){
+			if ((length & 1) == 0)
+				pending = c;
+			else {
+				int block = pending | (c << 16);
+				high = mixHash(high, block);
+				low = mixHash(low, block);
+			}
+			length++;
+			return this;
+		}
+
+		public KeyBuilder append(CharSequence s){
+			int n = s.length();
+			int i = 0;
+			if ((length & 1) == 1 && n > 0)
+				append(s.charAt(i++));
+			for (; i + 1 < n; i += 2){
+				int block = s.charAt(i) | (s.charAt(i + 1) << 16);
+				high = mixHash(high, block);
+				low = mixHash(low, block);
+				length += 2;
+			}
+			if (i < n)
+				append(s.charAt(i));
+			return this;
+		}
+
+		/*
+		 * Appends i in decimal, as String.valueOf(i) would.
+		 */
+		public KeyBuilder append(int i){
+			if (i == Integer.MIN_VALUE)
+				return append(String.valueOf(i));
+			if (i < 0){
+				append('-');
+				i = -i;
+			}
+			int n = 0;
+			do {
+				digits[n++] = (char) ('0' + i % 10);
+				i /= 10;
+			} while (i > 0);
+			while (n > 0)
+				append(digits[--n]);
+			return this;
+		}
+
+		public long key(){
+			int h = high;
+			int l = low;
+			if ((length & 1) == 1){
+				h ^= mixBlock(pending);
+				l ^= mixBlock(pending);
+			}
+			return ((long) finish(h, 2 * length) << 32) | (finish(l, 2 * length) & 0xffffffffL);
+		}
+	}
+
+	private static int mixBlock(int k){
+		k *= C1;
+		k = Integer.rotateLeft(k, 15);
+		return k * C2;
+	}
+
+	private static int mixHash(int h, int k){
+		h ^= mixBlock(k);
+		h = Integer.rotateLeft(h, 13);
+		return h * 5 + 0xe6546b64;
+	}
+
+	private static int finish(int h, int length){
+		return scramble(h ^ length);
+	}
+
+	/*
+	 * The MurmurHash3 finalizer: a bijection on ints that spreads every input bit over the output.
+	 */
+	static int scramble(int h){
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+}
@@ -0,0 +1,511 @@
+package withPerceptronClassifier.classify;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+
+/*
+ * The flat binary model format, read by memory-mapping the file, so loading
+ * builds no objects per feature and JVMs on one host share the pages.
+ * Everything is little-endian:
+ *
+ *   header (HEADER_SIZE bytes)
+ *     int magic, int version, int precision (Precision ordinal),
+ *     int hashBits (0 if indexed), int numLabels, int numFeatures,
+ *     long offsets of the label table, feature table, key table, scales and weights
+ *   label table: per label, int byte length and its UTF-8 bytes
+ *   feature table (indexed models only): int[numFeatures + 1] offsets into
+ *     the UTF-8 bytes of the features that follow, which are in byte order,
+ *     so feature ids are found by binary search
+ *   key table (indexed models only): long[numFeatures] FeatureHasher keys of
+ *     the features in ascending order, then int[numFeatures] the id of each,
+ *     so features are found by key by binary search too; starts at a multiple of 8
+ *   scales: double[numLabels], what a label's stored weights are multiplied by
+ *   weights: numFeatures * numLabels averaged weights, feature-major as in
+ *     WeightMatrix, in the model's precision; starts at a multiple of 8
+ *
+ * Only the weights of a file's own version are read; any change to the layout
+ * needs a new VERSION.
+ */
+final class ModelFile {
+
+	static final int MAGIC = 0x54504350;	//"PCPT"
+	static final int VERSION = 2;
+
+	private static final int HEADER_SIZE = 64;
+
+	private ModelFile(){
+	}
+
+	/*
+	 * Writes the averaged weights of the given rows of matrix, with the
+	 * labels and, unless the model is hashed, the features of those rows.
+	 */
+	static void write(String path, Index<String> labelIndex, Index<String> featureIndex, int hashBits,
+			WeightMatrix matrix, int[] rows, PerceptronClassifier.Precision precision) throws IOException {
+		int numLabels = matrix.numLabels;
+		byte[][] labels = new byte[numLabels][];
+		for (int label = 0; label < numLabels; label++)
+			labels[label] = labelIndex.get(label).getBytes(StandardCharsets.UTF_8);
+
+		byte[][] features = null;
+		long[] keys = null;
+		int[] keyIds = null;
+		if (featureIndex != null){
+			features = new byte[rows.length][];
+			for (int f = 0; f < rows.length; f++)
+				features[f] = featureIndex.get(rows[f]).getBytes(StandardCharsets.UTF_8);
+			Integer[] order = new Integer[rows.length];
+			for (int f = 0; f < order.length; f++)
+				order[f] = f;
+			final byte[][] unsorted = features;
+			Arrays.sort(order, new Comparator<Integer>(){
+				public int compare(Integer a, Integer b){
+					return compareBytes(unsorted[a], unsorted[b]);
+				}
+			});
+			features = new byte[rows.length][];
+			int[] sortedRows = new int[rows.length];
+			for (int f = 0; f < order.length; f++){
+				features[f] = unsorted[order[f]];
+				sortedRows[f] = rows[order[f]];
+			}
+			rows = sortedRows;
+
+			final long[] unsortedKeys = new long[rows.length];
+			for (int f = 0; f < rows.length; f++){
+				order[f] = f;
+				unsortedKeys[f] = FeatureHasher.key(featureIndex.get(rows[f]));
+			}
+			Arrays.sort(order, new Comparator<Integer>(){
+				public int compare(Integer a, Integer b){
+					return Long.compare(unsortedKeys[a], unsortedKeys[b]);
+				}
+			});
+			keys = new long[rows.length];
+			keyIds = new int[rows.length];
+			for (int k = 0; k < order.length; k++){
+				keys[k] = unsortedKeys[order[k]];
+				keyIds[k] = order[k];
+				if (k > 0 && keys[k] == keys[k - 1])
+					throw new IllegalArgumentException("features " + featureIndex.get(rows[keyIds[k - 1]]) + " and " +
+							featureIndex.get(rows[keyIds[k]]) + " have the same key");
+			}
+		}
+
+		double[] scales = new double[numLabels];
+		Arrays.fill(scales, 1);
+		if (precision == PerceptronClassifier.Precision.SHORT)
+			scales = CompactWeights.labelScales(matrix, rows, Short.MAX_VALUE);
+		else if (precision == PerceptronClassifier.Precision.BYTE)
+			scales = CompactWeights.labelScales(matrix, rows, Byte.MAX_VALUE);
+
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+		try {
+			file.setLength(0);
+			Output out = new Output(file.getChannel());
+			out.skip(HEADER_SIZE);
+
+			long labelTable = out.position();
+			for (byte[] label : labels){
+				out.writeInt(label.length);
+				out.write(label);
+			}
+
+			long featureTable = 0;
+			if (features != null){
+				featureTable = out.position();
+				int offset = 0;
+				out.writeInt(offset);
+				for (byte[] feature : features){
+					offset += feature.length;
+					out.writeInt(offset);
+				}
+				for (byte[] feature : features)
+					out.write(feature);
+			}
+
+			long keyTable = 0;
+			if (keys != null){
+				out.skip((int) (-out.position() & 7));
+				keyTable = out.position();
+				for (long key : keys)
+					out.writeLong(key);
+				for (int id : keyIds)
+					out.writeInt(id);
+			}
+
+			long scalesOffset = out.position();
+			for (double scale : scales)
+				out.writeDouble(scale);
+
+			out.skip((int) (-out.position() & 7));
+			long weightsOffset = out.position();
+			for (int row : rows){
+				for (int label = 0; label < numLabels; label++){
+					double weight = matrix.avgWeights[row * numLabels + label];
+					switch (precision){
+					case DOUBLE:
+						out.writeDouble(weight);
+						break;
+					case FLOAT:
+						out.writeFloat((float) weight);
+						break;
+					case SHORT:
+						out.writeShort((short) Math.round(weight / scales[label]));
+						break;
+					case BYTE:
+						out.write((byte) Math.round(weight / scales[label]));
+						break;
+					}
+				}
+			}
+			out.flush();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(precision.ordinal()).putInt(hashBits)
+					.putInt(numLabels).putInt(rows.length)
+					.putLong(labelTable).putLong(featureTable).putLong(keyTable).putLong(scalesOffset).putLong(weightsOffset);
+			header.flip();
+			file.getChannel().write(header, 0);
+		} finally {
+			file.close();
+		}
+	}
+
+	/*
+	 * Maps a model file written by write. The mappings stay valid after the file is closed.
+	 */
+	static PerceptronClassifier map(String path) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining())
+				if (channel.read(header, header.position()) < 0)
+					throw new IOException(path + " is not a perceptron model file");
+			header.flip();
+			if (header.getInt() != MAGIC)
+				throw new IOException(path + " is not a perceptron model file");
+			int version = header.getInt();
+			if (version != VERSION)
+				throw new IOException(path + " has model format version " + version + ", expected " + VERSION);
+			PerceptronClassifier.Precision precision = PerceptronClassifier.Precision.values()[header.getInt()];
+			int hashBits = header.getInt();
+			int numLabels = header.getInt();
+			int numFeatures = header.getInt();
+			long labelTable = header.getLong();
+			long featureTable = header.getLong();
+			long keyTable = header.getLong();
+			long scalesOffset = header.getLong();
+			long weightsOffset = header.getLong();
+
+			ByteBuffer tables = map(channel, labelTable, weightsOffset - labelTable);
+			PerceptronClassifier classifier = new PerceptronClassifier(0, hashBits);
+			classifier.labelIndex = new HashIndex<String>();
+			for (int label = 0; label < numLabels; label++){
+				byte[] bytes = new byte[tables.getInt()];
+				tables.get(bytes);
+				classifier.labelIndex.add(new String(bytes, StandardCharsets.UTF_8));
+			}
+
+			if (featureTable != 0){
+				tables.position((int) (featureTable - labelTable));
+				ByteBuffer features = tables.slice().order(ByteOrder.LITTLE_ENDIAN);
+				tables.position((int) (keyTable - labelTable));
+				ByteBuffer keys = tables.slice().order(ByteOrder.LITTLE_ENDIAN);
+				classifier.featureDictionary = new MappedFeatureTable(features, keys, numFeatures);
+			}
+
+			double[] scales = new double[numLabels];
+			tables.position((int) (scalesOffset - labelTable));
+			for (int label = 0; label < numLabels; label++)
+				scales[label] = tables.getDouble();
+
+			long weightBytes = (long) numFeatures * numLabels * bytesPer(precision);
+			classifier.compactWeights = new MappedWeights(map(channel, weightsOffset, weightBytes), precision, scales, numFeatures, numLabels);
+			return classifier;
+		} finally {
+			file.close();
+		}
+	}
+
+	private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("a model file section of " + size + " bytes is too large to map; save the model in a smaller precision");
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static int bytesPer(PerceptronClassifier.Precision precision){
+		switch (precision){
+		case DOUBLE:
+			return 8;
+		case FLOAT:
+			return 4;
+		case SHORT:
+			return 2;
+		default:
+			return 1;
+		}
+	}
+
+	/*
+	 * Unsigned byte order, which for UTF-8 is code point order.
+	 */
+	static int compareBytes(byte[] a, byte[] b){
+		int length = Math.min(a.length, b.length);
+		for (int i = 0; i < length; i++)
+			if (a[i] != b[i])
+				return (a[i] & 0xff) - (b[i] & 0xff);
+		return a.length - b.length;
+	}
+
+	/*
+	 * The sorted feature and key tables of a mapped file; a feature's id is its
+	 * position in the feature table. Both are searched in place.
+	 */
+	static class MappedFeatureTable implements FeatureDictionary {
+
+		private final ByteBuffer table;
+		private final ByteBuffer keys;
+		private final int numFeatures;
+		private final int bytesStart;	//where the feature bytes start, after the offsets
+		private final int idsStart;	//where the ids start in keys, after the keys themselves
+
+		MappedFeatureTable(ByteBuffer table, ByteBuffer keys, int numFeatures){
+			this.table = table;
+			this.keys = keys;
+			this.numFeatures = numFeatures;
+			bytesStart = 4 * (numFeatures + 1);
+			idsStart = 8 * numFeatures;
+		}
+
+		public int indexOf(String feature){
+			int low = 0;
+			int high = numFeatures - 1;
+			while (low <= high){
+				int middle = (low + high) >>> 1;
+				int comparison = compareTo(middle, feature);
+				if (comparison < 0)
+					low = middle + 1;
+				else if (comparison > 0)
+					high = middle - 1;
+				else
+					return middle;
+			}
+			return -1;
+		}
+
+		/*
+		 * Compares feature f of the table with feature, decoding the mapped UTF-8
+		 * in place so that nothing is allocated. UTF-8 byte order is code point
+		 * order, so this agrees with the byte order the table is sorted in. An
+		 * unpaired surrogate counts as '?', which is what encoding it gives.
+		 */
+		private int compareTo(int f, String feature){
+			int position = bytesStart + table.getInt(4 * f);
+			int end = bytesStart + table.getInt(4 * (f + 1));
+			int i = 0;
+			while (position < end && i < feature.length()){
+				int b = table.get(position++) & 0xff;
+				int codePoint;
+				if (b < 0x80)
+					codePoint = b;
+				else if (b < 0xe0)
+					codePoint = (b & 0x1f) << 6 | (table.get(position++) & 0x3f);
+				else if (b < 0xf0){
+					codePoint = (b & 0x0f) << 12 | (table.get(position++) & 0x3f) << 6;
+					codePoint |= table.get(position++) & 0x3f;
+				}
+				else {
+					codePoint = (b & 0x07) << 18 | (table.get(position++) & 0x3f) << 12;
+					codePoint |= (table.get(position++) & 0x3f) << 6;
+					codePoint |= table.get(position++) & 0x3f;
+				}
+
+				int c = feature.codePointAt(i);
+				i += Character.charCount(c);
+				if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)
+					c = '?';
+				if (codePoint != c)
+					return codePoint - c;
+			}
+			if (position < end)
+				return 1;
+			return i < feature.length() ? -1 : 0;
+		}
+
+		public int indexOf(long key){
+			int low = 0;
+			int high = numFeatures - 1;
+			while (low <= high){
+				int middle = (low + high) >>> 1;
+				long middleKey = keys.getLong(8 * middle);
+				if (middleKey < key)
+					low = middle + 1;
+				else if (middleKey > key)
+					high = middle - 1;
+				else
+					return keys.getInt(idsStart + 4 * middle);
+			}
+			return -1;
+		}
+
+		public int size(){
+			return numFeatures;
+		}
+	}
+
+	/*
+	 * Averaged weights read in place from a mapped weight block. A mapped
+	 * model can't be serialized; it is saved by writing its file again.
+	 */
+	static class MappedWeights extends CompactWeights {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient ByteBuffer block;
+		private final transient DoubleBuffer doubles;
+		private final transient FloatBuffer floats;
+		private final transient ShortBuffer shorts;
+		private final PerceptronClassifier.Precision precision;
+		private final double[] scales;
+
+		MappedWeights(ByteBuffer block, PerceptronClassifier.Precision precision, double[] scales, int numFeatures, int numLabels){
+			super(numFeatures, numLabels);
+			this.block = block;
+			this.precision = precision;
+			this.scales = scales;
+			doubles = block.asDoubleBuffer();
+			floats = block.asFloatBuffer();
+			shorts = block.asShortBuffer();
+		}
+
+		void scores(int[] featureIndices, int from, int to, double[] scores){
+			for (int label = 0; label < numLabels; label++)
+				scores[label] = 0;
+			switch (precision){
+			case DOUBLE:
+				for (int k = from; k < to; k++){
+					int row = featureIndices[k] * numLabels;
+					for (int label = 0; label < numLabels; label++)
+						scores[label] += doubles.get(row + label);
+				}
+				break;
+			case FLOAT:
+				for (int k = from; k < to; k++){
+					int row = featureIndices[k] * numLabels;
+					for (int label = 0; label < numLabels; label++)
+						scores[label] += floats.get(row + label);
+				}
+				break;
+			case SHORT:
+				for (int k = from; k < to; k++){
+					int row = featureIndices[k] * numLabels;
+					for (int label = 0; label < numLabels; label++)
+						scores[label] += shorts.get(row + label);
+				}
+				break;
+			case BYTE:
+				for (int k = from; k < to; k++){
+					int row = featureIndices[k] * numLabels;
+					for (int label = 0; label < numLabels; label++)
+						scores[label] += block.get(row + label);
+				}
+				break;
+			}
+			for (int label = 0; label < numLabels; label++)
+				scores[label] *= scales[label];
+		}
+
+		long byteSize(){
+			return block.capacity() + 8L * scales.length;
+		}
+	}
+
+	/*
+	 * Buffered little-endian writes to a file channel.
+	 */
+	private static class Output {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		private long position = 0;
+
+		Output(FileChannel channel){
+			this.channel = channel;
+		}
+
+		long position(){
+			return position + buffer.position();
+		}
+
+		void skip(int bytes) throws IOException {
+			for (int i = 0; i < bytes; i++)
+				write((byte) 0);
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes)
+				flush();
+		}
+
+		void write(byte b) throws IOException {
+			ensure(1);
+			buffer.put(b);
+		}
+
+		void write(byte[] bytes) throws IOException {
+			for (int i = 0; i < bytes.length; ){
+				ensure(1);
+				int n = Math.min(buffer.remaining(), bytes.length - i);
+				buffer.put(bytes, i, n);
+				i += n;
+			}
+		}
+
+		void writeShort(short s) throws IOException {
+			ensure(2);
+			buffer.putShort(s);
+		}
+
+		void writeInt(int i) throws IOException {
+			ensure(4);
+			buffer.putInt(i);
+		}
+
+		void writeLong(long l) throws IOException {
+			ensure(8);
+			buffer.putLong(l);
+		}
+
+		void writeFloat(float f) throws IOException {
+			ensure(4);
+			buffer.putFloat(f);
+		}
+
+		void writeDouble(double d) throws IOException {
+			ensure(8);
+			buffer.putDouble(d);
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				position += channel.write(buffer);
+			buffer.clear();
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+package withPerceptronClassifier.classify;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import edu.stanford.nlp.classify.Dataset;
+
+/*
+ * A training set packed once into flat arrays, so training epochs never
+ * go back to the Dataset's Strings: the feature ids of datum i are
+ * features[offsets[i]] up to features[offsets[i + 1]], sorted and without
+ * duplicates, and its label id is labels[i]. Epochs visit the datums
+ * in the order of a permutation that shuffle() reshuffles in place.
+ */
+class PackedDataset {
+
+	private final int[] offsets;
+	private final int[] features;
+	private final int[] labels;
+	private final int[] order;
+
+	/*
+	 * featureIds and labelIds map the dataset's own feature and label
+	 * indices to the classifier's; features mapped to -1 are left out.
+	 */
+	PackedDataset(Dataset<String, String> dataset, int[] featureIds, int[] labelIds){
+		int[][] data = dataset.getDataArray();
+		int[] datasetLabels = dataset.getLabelsArray();
+		int size = dataset.size();
+
+		int numFeatures = 0;
+		for (int i = 0; i < size; i++)
+			numFeatures += data[i].length;
+
+		offsets = new int[size + 1];
+		labels = new int[size];
+		order = new int[size];
+		int[] packed = new int[numFeatures];
+		int[] row = new int[16];
+		int next = 0;
+		for (int i = 0; i < size; i++){
+			if (row.length < data[i].length)
+				row = new int[Math.max(data[i].length, 2 * row.length)];
+			int rowLength = 0;
+			for (int datasetFeature : data[i]){
+				int id = featureIds[datasetFeature];
+				if (id >= 0)
+					row[rowLength++] = id;
+			}
+			next = appendSortedUnique(row, rowLength, packed, next);
+			offsets[i + 1] = next;
+			labels[i] = labelIds[datasetLabels[i]];
+			order[i] = i;
+		}
+		features = next == packed.length ? packed : Arrays.copyOf(packed, next);
+	}
+
+	/*
+	 * Sorts row[0 .. length) and copies it to out at position, dropping duplicates;
+	 * returns the position after the last id copied.
+	 */
+	private static int appendSortedUnique(int[] row, int length, int[] out, int position){
+		Arrays.sort(row, 0, length);
+		int start = position;
+		for (int i = 0; i < length; i++)
+			if (position == start || row[i] != out[position - 1])
+				out[position++] = row[i];
+		return position;
+	}
+
+	int size(){
+		return labels.length;
+	}
+
+	/*
+	 * Same Fisher-Yates shuffle, seeded by the epoch, as Dataset.randomize.
+	 */
+	void shuffle(long seed){
+		Random random = new Random(seed);
+		for (int j = order.length - 1; j > 0; j--){
+			int k = random.nextInt(j + 1);
+			int swap = order[j];
+			order[j] = order[k];
+			order[k] = swap;
+		}
+	}
+
+	/*
+	 * The datum visited at position i of the current order.
+	 */
+	int datum(int i){
+		return order[i];
+	}
+
+	int label(int datum){
+		return labels[datum];
+	}
+
+	int featuresStart(int datum){
+		return offsets[datum];
+	}
+
+	int featuresEnd(int datum){
+		return offsets[datum + 1];
+	}
+
+	/*
+	 * The packed feature ids; a datum's ids lie between featuresStart and featuresEnd.
+	 */
+	int[] features(){
+		return features;
+	}
+
+}
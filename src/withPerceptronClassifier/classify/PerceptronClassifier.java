@@ -7,8 +7,16 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -17,119 +25,232 @@ import edu.stanford.nlp.ling.Datum;
 import edu.stanford.nlp.stats.ClassicCounter;
 import edu.stanford.nlp.stats.Counter;
 import edu.stanford.nlp.util.ErasureUtils;
+import edu.stanford.nlp.util.HashIndex;
 import edu.stanford.nlp.util.Index;
 
 public class PerceptronClassifier implements Serializable{
 
 	private static final long serialVersionUID = 1L;
 
+	/*
+	 * The weights of one label. Weights are kept feature-major in a
+	 * WeightMatrix now; this is only the per-label form models are saved in.
+	 */
 	static class LabelWeights implements Serializable{
 
 		private static final long serialVersionUID = 1L;
 		
-		//TODO
 		public double[] weights;
 		public double[] avgWeights;
-		
-		public transient int currentIteration;
-        public transient int[] lastUpdateIteration;
 
 		LabelWeights(int numFeatures) {
 			weights = new double[numFeatures];
 			avgWeights = new double[numFeatures];
-			lastUpdateIteration = new int[numFeatures];
-			currentIteration = 1;
-		}
-
-		void clear() {
-			weights = null;
-		}
-
-		void incrementSurvivalIterations() {
-			currentIteration++;
-		}
-
-		void updateAllAverage() {
-			for(int i = 0; i < weights.length; i++) {
-				updateAverageForIndex(i);
-			}
-		}
-		
-		void updateAverageForIndex(int i) {
-            if (lastUpdateIteration[i] != 0)
-                avgWeights[i] += weights[i] * (currentIteration - lastUpdateIteration[i]);
-            lastUpdateIteration[i] = currentIteration;
-        }
-		
-		void updateAverage(Set<Integer> exampleFeatureIndices) {
-			for (int i : exampleFeatureIndices)
-				updateAverageForIndex(i);
-		}
-
-		void update(Set<Integer> exampleFeatureIndices, double weight) {
-			updateAverage(exampleFeatureIndices);
-
-			for(int d : exampleFeatureIndices){
-				weights[d] += weight;
-			}
-		}
-		
-		double dotProduct(Set<Integer> featureIndices) {
-			return dotProduct(featureIndices, weights);
-		}
-		
-		double dotProduct(Set<Integer> featureCounts, double [] weights) {
-			double dotProd = 0;
-			for (int i : featureCounts)
-				dotProd += weights[i];
-			return dotProd;
 		}
 		
 	}
 	
-	LabelWeights[] zWeights;
+	WeightMatrix zWeights;
+	CompactWeights compactWeights;	//instead of zWeights in an inference-only model
+	
+	/*
+	 * Storage for the weights of an inference-only model: FLOAT halves the
+	 * size of the averaged weights, SHORT and BYTE quantize them with a scale
+	 * per label. DOUBLE keeps the full weights, so a compacted hashed model can
+	 * still be trained further; a compacted indexed model can't, since its
+	 * PerfectHashDictionary doesn't keep the feature strings to add new ones to.
+	 */
+	public enum Precision { DOUBLE, FLOAT, SHORT, BYTE }
 	
 	public Index<String> labelIndex;
-	public Index<String> featureIndex;
+	public Index<String> featureIndex;	//null in hashed mode and in compacted models
+	FeatureDictionary featureDictionary;	//instead of featureIndex in a compacted indexed model
+	private transient boolean sharedIndices;	//labelIndex and featureIndex may be a dataset's or another model's, so copy them before growing them
 	
 	final int epochs;
+	
+	int hashBits;	//0 for an indexed model, otherwise features are hashed into 2^hashBits weights
+	
+	int minFeatureCount = 1;
 
 	public PerceptronClassifier(int epochs){
+		this(epochs, 0);
+	}
+	
+	/*
+	 * A hashed classifier keeps no feature index: each feature string is hashed
+	 * with FeatureHasher straight into a fixed space of 2^hashBits weights, so
+	 * the model size doesn't depend on the number of features and looking a
+	 * feature up allocates nothing. Colliding features share a weight.
+	 */
+	public PerceptronClassifier(int epochs, int hashBits){
+		if (hashBits < 0 || hashBits > 30)
+			throw new IllegalArgumentException("hashBits must be between 0 and 30");
 		this.epochs = epochs;
+		this.hashBits = hashBits;
 	}
 	
 	public PerceptronClassifier(){
 		this(10);
 	}
 	
+	/*
+	 * Features occurring fewer than minFeatureCount times in a training set are
+	 * left out of training, as Dataset.applyFeatureCountThreshold would, found by
+	 * an exact count over the dataset's feature ids when training starts.
+	 * 1, the default, keeps every feature.
+	 */
+	public void setMinFeatureCount(int minFeatureCount){
+		this.minFeatureCount = minFeatureCount;
+	}
+	
+	/*
+	 * An inference-only model has its weights saved as a -1 followed by the
+	 * CompactWeights, in place of the number of labels and their LabelWeights.
+	 * A compacted model has its FeatureDictionary saved in place of the feature index.
+	 */
 	public void save(String modelPath) throws IOException {
-		/*for(LabelWeights zw : zWeights){
-			zw.clear();
-		}*/
+		if (compactWeights instanceof ModelFile.MappedWeights)
+			throw new IllegalStateException("a mapped model can't be serialized");
 		
 		ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(
 		        new GZIPOutputStream(new FileOutputStream(modelPath))));
 		
-		assert(zWeights != null);
-		out.writeInt(zWeights.length);
-	    for(LabelWeights zw: zWeights) {
-	      out.writeObject(zw);
-	    }
+		if (compactWeights != null){
+			out.writeInt(-1);
+			out.writeObject(compactWeights);
+		}
+		else {
+			assert(zWeights != null);
+			out.writeInt(zWeights.numLabels);
+		    for(LabelWeights zw: zWeights.toLabelWeights()) {
+		      out.writeObject(zw);
+		    }
+		}
 	    
 	    out.writeObject(labelIndex);
-	    out.writeObject(featureIndex);
+	    out.writeObject(featureDictionary != null ? featureDictionary : featureIndex);
 	    
 	    out.close(); 
 	}
 
 	public void load(ObjectInputStream in) throws IOException, ClassNotFoundException {
 		int length = in.readInt();
-		zWeights = new LabelWeights[length];
-		for(int i = 0; i < zWeights.length; i ++)
-			zWeights[i] = ErasureUtils.uncheckedCast(in.readObject());
+		if (length < 0)
+			compactWeights = ErasureUtils.uncheckedCast(in.readObject());
+		else {
+			LabelWeights[] labelWeights = new LabelWeights[length];
+			for(int i = 0; i < labelWeights.length; i ++)
+				labelWeights[i] = ErasureUtils.uncheckedCast(in.readObject());
+			zWeights = WeightMatrix.fromLabelWeights(labelWeights);
+		}
 
 		labelIndex = ErasureUtils.uncheckedCast(in.readObject());
-		featureIndex = ErasureUtils.uncheckedCast(in.readObject());
+		Object features = in.readObject();
+		if (features instanceof FeatureDictionary)
+			featureDictionary = (FeatureDictionary) features;
+		else
+			featureIndex = ErasureUtils.uncheckedCast(features);
+		
+		if (features == null)	//hashed model; the weight arrays span the whole hash space
+			hashBits = Integer.numberOfTrailingZeros(numFeatures());
+	}
+	
+	/*
+	 * Saves a smaller copy of this model; see compacted.
+	 */
+	public void save(String modelPath, Precision precision, double pruneThreshold) throws IOException {
+		compacted(precision, pruneThreshold).save(modelPath);
+	}
+	
+	/*
+	 * A copy of this model for classification only, with its averaged weights in
+	 * the given precision and without the features whose summed weights are all
+	 * within pruneThreshold of zero (0 drops only features that never got any
+	 * weight and so changes no score; a negative threshold keeps every feature).
+	 * Hashed models keep all their features, since their ids are fixed by the hash.
+	 * The kept features are looked up in a PerfectHashDictionary, which doesn't
+	 * keep their strings, so a compacted model can't be compacted again.
+	 */
+	public PerceptronClassifier compacted(Precision precision, double pruneThreshold){
+		if (zWeights == null)
+			throw new IllegalStateException("model is already compacted");
+		
+		PerceptronClassifier compacted = new PerceptronClassifier(epochs, hashBits);
+		compacted.labelIndex = labelIndex;
+		compacted.sharedIndices = true;
+		
+		int[] rows = keptRows(pruneThreshold);
+		if (!isHashed()){
+			List<String> features = new ArrayList<String>(rows.length);
+			for(int row : rows)
+				features.add(featureIndex.get(row));
+			compacted.featureDictionary = new PerfectHashDictionary(features);
+			
+			int[] rowsById = new int[rows.length];
+			for(int i = 0; i < rows.length; i++)
+				rowsById[compacted.featureDictionary.indexOf(features.get(i))] = rows[i];
+			rows = rowsById;
+		}
+		
+		if (precision == Precision.DOUBLE)
+			compacted.zWeights = zWeights.rows(rows);
+		else
+			compacted.compactWeights = CompactWeights.of(zWeights, rows, precision);
+		return compacted;
+	}
+	
+	/*
+	 * The features that compacting with pruneThreshold keeps, in id order.
+	 */
+	private int[] keptRows(double pruneThreshold){
+		if (!isHashed() && featureIndex == null)
+			throw new IllegalStateException("model doesn't keep its feature strings");
+		
+		int[] rows = new int[zWeights.numFeatures];
+		int numRows = 0;
+		for(int f = 0; f < rows.length; f++)
+			if (isHashed() || pruneThreshold < 0 || !zWeights.negligible(f, pruneThreshold))
+				rows[numRows++] = f;
+		return numRows == rows.length ? rows : Arrays.copyOf(rows, numRows);
+	}
+	
+	/*
+	 * Writes the compacted model (see compacted) in the flat binary format of
+	 * ModelFile, which map loads without deserializing anything.
+	 */
+	public void saveBinary(String modelPath, Precision precision, double pruneThreshold) throws IOException {
+		if (zWeights == null)
+			throw new IllegalStateException("model is already compacted");
+		ModelFile.write(modelPath, labelIndex, featureIndex, hashBits, zWeights, keptRows(pruneThreshold), precision);
+	}
+	
+	/*
+	 * Loads a model saved by saveBinary by memory-mapping it: the features and
+	 * weights are read in place from the file, so this takes about the same time
+	 * whatever the model size, and processes mapping one file share its pages.
+	 * The model can only classify.
+	 */
+	public static PerceptronClassifier map(String modelPath) throws IOException {
+		return ModelFile.map(modelPath);
+	}
+	
+	/*
+	 * Number of features the model has weights for.
+	 */
+	public int numFeatures(){
+		return compactWeights != null ? compactWeights.numFeatures : zWeights.numFeatures;
+	}
+	
+	/*
+	 * Bytes taken by the weights used for classification.
+	 */
+	public long weightBytes(){
+		return compactWeights != null ? compactWeights.byteSize() : 8L * zWeights.size();
+	}
+	
+	public boolean isHashed(){
+		return hashBits > 0;
 	}
 	
 	public static PerceptronClassifier load(String modelPath) throws IOException, ClassNotFoundException {
@@ -143,104 +264,578 @@ public class PerceptronClassifier implements Serializable{
 		return ex;
 	}
 	
-	public void train(Dataset<String, String> dataset){
+	/*
+	 * Takes the label and feature indices from the dataset, starts from
+	 * zero weights and packs the dataset for training.
+	 */
+	private PackedDataset startTraining(Dataset<String, String> dataset){
 		labelIndex = dataset.labelIndex();
-		featureIndex = dataset.featureIndex();
-		int numFeatures = featureIndex.size();
+		boolean[] kept = frequentFeatures(dataset);
+		if (isHashed())
+			featureIndex = null;
+		else if (kept == null)
+			featureIndex = dataset.featureIndex();
+		else {
+			featureIndex = new HashIndex<String>();
+			for(int i = 0; i < kept.length; i++)
+				if (kept[i])
+					featureIndex.add(dataset.featureIndex().get(i));
+		}
+		featureDictionary = null;
+		compactWeights = null;
+		sharedIndices = true;
+		int numFeatures = isHashed() ? 1 << hashBits : featureIndex.size();
+		
+		zWeights = new WeightMatrix(numFeatures, labelIndex.size());
+		
+		System.err.println("Running perceptronClassifier on " + dataset.size() + " datum with " + dataset.numFeatureTypes() + " features" +
+				(isHashed() ? " hashed into " + numFeatures + " weights" : ""));
+		
+		return pack(dataset, kept);
+	}
+	
+	/*
+	 * Which of the dataset's features occur at least minFeatureCount times,
+	 * or null if every feature is kept.
+	 */
+	private boolean[] frequentFeatures(Dataset<String, String> dataset){
+		if (minFeatureCount <= 1)
+			return null;
+		
+		int[] counts = new int[dataset.featureIndex().size()];
+		int[][] data = dataset.getDataArray();
+		for(int i = 0; i < dataset.size(); i++)	//the array can be longer than the dataset
+			for(int feature : data[i])
+				counts[feature]++;
 		
-		zWeights = new LabelWeights[labelIndex.size()];
-		for(int i = 0; i < zWeights.length; i++)
-			zWeights[i] = new LabelWeights(numFeatures);
+		boolean[] kept = new boolean[counts.length];
+		int numKept = 0;
+		for(int i = 0; i < counts.length; i++){
+			kept[i] = counts[i] >= minFeatureCount;
+			if (kept[i])
+				numKept++;
+		}
+		System.err.println(numKept + " of " + counts.length + " features occur at least " + minFeatureCount + " times");
+		return kept;
+	}
+	
+	public void train(Dataset<String, String> dataset){
+		train(dataset, null, 0);
+	}
+	
+	/*
+	 * Trains for at most epochs epochs, and if devSet isn't null, measures the
+	 * accuracy of the averaged weights on it after each epoch: training stops
+	 * once patience epochs in a row haven't improved on the best accuracy so far,
+	 * and the model is left as it was after the best epoch.
+	 */
+	public void train(Dataset<String, String> dataset, Dataset<String, String> devSet, int patience){
+		if (devSet != null && patience < 1)
+			throw new IllegalArgumentException("patience must be at least 1");
 		
-		System.err.println("Running perceptronClassifier on " + dataset.size() + " datum with " + dataset.numFeatureTypes() + " features");
+		PackedDataset packed = startTraining(dataset);
+		runEpochs(packed, epochs, devSet, patience);
+	}
+	
+	public void continueTraining(Dataset<String, String> dataset, int epochs){
+		continueTraining(dataset, epochs, null, 0);
+	}
+	
+	/*
+	 * Trains this model further on dataset (a trained or loaded model that isn't
+	 * compacted, or a hashed one compacted with DOUBLE precision), for the given
+	 * number of epochs and with early stopping as in train. The dataset's new
+	 * labels and features are added to the indices and get zero weights, and the
+	 * weights of the existing ones go on from where they were. The summed weights go on too, so the model is
+	 * averaged over the steps of the earlier training and of this one.
+	 */
+	public void continueTraining(Dataset<String, String> dataset, int epochs, Dataset<String, String> devSet, int patience){
+		if (devSet != null && patience < 1)
+			throw new IllegalArgumentException("patience must be at least 1");
+		
+		PackedDataset packed = resumeTraining(dataset);
+		runEpochs(packed, epochs, devSet, patience);
+	}
+	
+	/*
+	 * Adds the dataset's new labels and kept features to the indices, makes room
+	 * for them in the weights and packs the dataset for training. Indices taken
+	 * from a training dataset or another model are copied first, so growing
+	 * them leaves the dataset or model as it was.
+	 */
+	private PackedDataset resumeTraining(Dataset<String, String> dataset){
+		if (zWeights == null || (!isHashed() && featureIndex == null))
+			throw new IllegalStateException("a compacted model can't be trained further");
+		
+		if (sharedIndices){
+			labelIndex = copyOf(labelIndex);
+			if (featureIndex != null)
+				featureIndex = copyOf(featureIndex);
+			sharedIndices = false;
+		}
+		for(String label : dataset.labelIndex())
+			labelIndex.indexOf(label, true);
+		boolean[] kept = frequentFeatures(dataset);
+		if (!isHashed()){
+			Index<String> datasetFeatures = dataset.featureIndex();
+			for(int i = 0; i < datasetFeatures.size(); i++)
+				if (kept == null || kept[i])
+					featureIndex.indexOf(datasetFeatures.get(i), true);
+		}
+		int numFeatures = isHashed() ? zWeights.numFeatures : featureIndex.size();
+		
+		System.err.println("Continuing perceptronClassifier on " + dataset.size() + " datum, growing from " +
+				zWeights.numFeatures + " to " + numFeatures + " features and " + zWeights.numLabels + " to " + labelIndex.size() + " labels");
+		
+		zWeights.grow(numFeatures, labelIndex.size());
+		zWeights.resume();
+		
+		return pack(dataset, kept);
+	}
+	
+	private void runEpochs(PackedDataset packed, int epochs, Dataset<String, String> devSet, int patience){
+		PackedDataset dev = devSet != null ? pack(devSet, null) : null;
+		int[] features = packed.features();
+		double[] scores = new double[labelIndex.size()];
 		long startTime = System.currentTimeMillis();
 		
+		WeightMatrix best = null;
+		WeightMatrix averaged = null;	//scratch for the settled weights of each epoch, swapped with best when it improves
+		double bestAccuracy = -1;
+		int bestEpoch = 0;
+		
 		for(int t = 0; t < epochs; t++){
-			dataset.randomize(t);
+			packed.shuffle(t);
+			long epochStart = System.nanoTime();
 			
 			System.err.println();
 			System.err.println("Epoch: " + (t+1) + " of " + epochs);
 			
-			for(int i = 0; i < dataset.size(); i++){
+			int mistakes = 0;
+			for(int i = 0; i < packed.size(); i++){
 				if (i%500000 == 0){
-					System.err.println("Datum: " + i + " of " + dataset.size());
+					System.err.println("Datum: " + i + " of " + packed.size());
 					System.err.println("Elapsed time: " + (System.currentTimeMillis() - startTime)/1000 + "s");
 				}
-				Datum<String, String> datum = dataset.getDatum(i);
+				int datum = packed.datum(i);
+				if (zWeights.train(features, packed.featuresStart(datum), packed.featuresEnd(datum), packed.label(datum), scores))
+					mistakes++;
+			}
+			System.err.println(mistakes + " mistakes, " + datumsPerSecond(packed.size(), System.nanoTime() - epochStart) + " datums/sec");
+			
+			if (dev != null){
+				if (averaged == null)
+					averaged = new WeightMatrix(zWeights.numFeatures, zWeights.numLabels);
+				zWeights.settleInto(averaged);
+				double accuracy = accuracy(averaged, dev);
+				System.err.println("Dev accuracy: " + accuracy);
+				if (accuracy > bestAccuracy){
+					System.arraycopy(zWeights.weights, 0, averaged.weights, 0, zWeights.size());
+					WeightMatrix previousBest = best;
+					best = averaged;
+					averaged = previousBest;
+					bestAccuracy = accuracy;
+					bestEpoch = t + 1;
+				}
+				else if (t + 1 - bestEpoch >= patience){
+					System.err.println("No improvement in " + patience + " epochs, stopping");
+					break;
+				}
+			}
+		}
+		
+		if (best != null){
+			System.err.println("Keeping epoch " + bestEpoch + ", dev accuracy " + bestAccuracy);
+			zWeights = best;
+		}
+		else
+			zWeights.settle();
+	}
+	
+	/*
+	 * The fraction of a packed dataset that summed weights label correctly.
+	 */
+	private static double accuracy(WeightMatrix weights, PackedDataset dataset){
+		double[] scores = new double[weights.numLabels];
+		int[] features = dataset.features();
+		int correct = 0;
+		for(int datum = 0; datum < dataset.size(); datum++){
+			weights.scores(features, dataset.featuresStart(datum), dataset.featuresEnd(datum), weights.avgWeights, scores);
+			if (WeightMatrix.argMax(scores) == dataset.label(datum))
+				correct++;
+		}
+		return dataset.size() > 0 ? (double) correct / dataset.size() : 0;
+	}
+	
+	/*
+	 * Parallel training by iterative parameter mixing (McDonald, Hall and Mann, 2010).
+	 * Each epoch the shuffled dataset is split into shards, and a perceptron per shard
+	 * is trained on a fork-join pool, starting from the current weights. The shards'
+	 * weights are then mixed into the new current weights: averaged uniformly, or
+	 * weighted by the number of updates each shard made if weightByUpdates.
+	 * The summed weights of every shard step are kept, so the final model is
+	 * averaged over all steps just like a sequentially trained one.
+	 * With one shard this is the same as train.
+	 *
+	 * Every shard has a full weight matrix of its own, allocated once and reset
+	 * from the current weights each epoch, so training takes shards + 1 times
+	 * the memory of sequential training: 16 bytes per feature and label each.
+	 */
+	public void trainParallel(Dataset<String, String> dataset, int shards, boolean weightByUpdates){
+		if (shards < 1)
+			throw new IllegalArgumentException("shards must be at least 1");
+		final PackedDataset packed = startTraining(dataset);
+		final int[] features = packed.features();
+		final int numLabels = labelIndex.size();
+		
+		long shardBytes = 16L * zWeights.size();
+		if (shards * shardBytes > Runtime.getRuntime().maxMemory())
+			throw new IllegalArgumentException(shards + " shards need " + shards * shardBytes / (1 << 20) + "MB for their weights, " +
+					"more than the " + Runtime.getRuntime().maxMemory() / (1 << 20) + "MB heap; use fewer shards");
+		final WeightMatrix[] shardWeights = new WeightMatrix[shards];
+		for(int s = 0; s < shards; s++)
+			shardWeights[s] = new WeightMatrix(zWeights.numFeatures, numLabels);
+		
+		ForkJoinPool pool = new ForkJoinPool(shards);
+		long startTime = System.currentTimeMillis();
+		
+		try {
+			for(int t = 0; t < epochs; t++){
+				packed.shuffle(t);
+				
+				List<Callable<Integer>> shardTasks = new ArrayList<Callable<Integer>>();
+				for(int s = 0; s < shards; s++){
+					final int shard = s;
+					final int from = (int) ((long) packed.size() * s / shards);
+					final int to = (int) ((long) packed.size() * (s + 1) / shards);
+					shardTasks.add(new Callable<Integer>(){
+						public Integer call(){
+							WeightMatrix weights = shardWeights[shard];
+							weights.reset(zWeights);
+							double[] scores = new double[numLabels];
+							int updates = 0;
+							for(int i = from; i < to; i++){
+								int datum = packed.datum(i);
+								if (weights.train(features, packed.featuresStart(datum), packed.featuresEnd(datum), packed.label(datum), scores))
+									updates++;
+							}
+							weights.settle();
+							return updates;
+						}
+					});
+				}
 				
-				Set<Integer> exampleFeatureIndices = featuresOf(datum);
+				int totalUpdates = 0;
+				int[] updates = new int[shards];
+				List<Future<Integer>> results = pool.invokeAll(shardTasks);
+				for(int s = 0; s < shards; s++){
+					updates[s] = results.get(s).get();
+					totalUpdates += updates[s];
+				}
 				
-				String predictedLabel = argMaxDotProduct(exampleFeatureIndices);
-				String goldLabel = datum.label();
+				final double[] mixingWeights = new double[shards];
+				for(int s = 0; s < shards; s++)
+					mixingWeights[s] = weightByUpdates && totalUpdates > 0 ? (double) updates[s] / totalUpdates : 1.0 / shards;
 				
-				if (!predictedLabel.equals(goldLabel)){
-					zWeights[labelIndex.indexOf(predictedLabel)].update(exampleFeatureIndices, -1.0);
-					zWeights[labelIndex.indexOf(goldLabel)].update(exampleFeatureIndices, 1.0);
+				List<Callable<Void>> mixTasks = new ArrayList<Callable<Void>>();
+				for(int s = 0; s < shards; s++){
+					final int from = (int) ((long) zWeights.size() * s / shards);
+					final int to = (int) ((long) zWeights.size() * (s + 1) / shards);
+					mixTasks.add(new Callable<Void>(){
+						public Void call(){
+							zWeights.mix(shardWeights, mixingWeights, from, to);
+							return null;
+						}
+					});
 				}
+				for(Future<Void> result : pool.invokeAll(mixTasks))
+					result.get();
 				
-				for(LabelWeights zw : zWeights)
-					zw.incrementSurvivalIterations();
+				System.err.println("Epoch: " + (t+1) + " of " + epochs + ", " + totalUpdates + " updates in " + shards + " shards, " +
+						"elapsed time: " + (System.currentTimeMillis() - startTime)/1000 + "s");
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
 		}
+	}
+	
+	/*
+	 * Asynchronous ("Hogwild!", Niu et al. 2011) training: each epoch, worker
+	 * threads take datums from the shuffled dataset through a shared cursor and
+	 * update the one shared weight matrix without any locking. Feature vectors are
+	 * sparse, so two workers rarely write the same weights at once, and a lost
+	 * update now and then costs little. Steps are numbered by a global atomic
+	 * counter, which is all the averaging in WeightMatrix needs.
+	 * Unlike train, the result depends on thread scheduling.
+	 */
+	public void trainAsynchronous(Dataset<String, String> dataset, int threads){
+		final PackedDataset packed = startTraining(dataset);
+		final int[] features = packed.features();
+		final int numLabels = labelIndex.size();
+		final AtomicLong steps = new AtomicLong();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		long startTime = System.currentTimeMillis();
 		
-		for(LabelWeights zw : zWeights)
-			zw.updateAllAverage();
+		try {
+			for(int t = 0; t < epochs; t++){
+				packed.shuffle(t);
+				long epochStart = System.nanoTime();
+				
+				final AtomicInteger cursor = new AtomicInteger();
+				final AtomicInteger mistakes = new AtomicInteger();
+				List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+				for(int w = 0; w < threads; w++){
+					workers.add(new Callable<Void>(){
+						public Void call(){
+							double[] scores = new double[numLabels];
+							int i;
+							while ((i = cursor.getAndIncrement()) < packed.size()){
+								int datum = packed.datum(i);
+								int from = packed.featuresStart(datum);
+								int to = packed.featuresEnd(datum);
+								long step = steps.incrementAndGet();
+								
+								zWeights.scores(features, from, to, zWeights.weights, scores);
+								int predictedLabel = WeightMatrix.argMax(scores);
+								int goldLabel = packed.label(datum);
+								if (predictedLabel != goldLabel){
+									zWeights.update(features, from, to, predictedLabel, -1.0, step);
+									zWeights.update(features, from, to, goldLabel, 1.0, step);
+									mistakes.incrementAndGet();
+								}
+							}
+							return null;
+						}
+					});
+				}
+				for(Future<Void> result : pool.invokeAll(workers))
+					result.get();
+				
+				System.err.println("Epoch: " + (t+1) + " of " + epochs + ", " + mistakes.get() + " mistakes, " +
+						datumsPerSecond(packed.size(), System.nanoTime() - epochStart) + " datums/sec with " + threads + " threads, " +
+						"elapsed time: " + (System.currentTimeMillis() - startTime)/1000 + "s");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		
+		zWeights.settle(steps.get());
+	}
+	
+	private static Index<String> copyOf(Index<String> index){
+		Index<String> copy = new HashIndex<String>(index.size());
+		for(int i = 0; i < index.size(); i++)
+			copy.add(index.get(i));
+		return copy;
 	}
 	
-	private Set<Integer> featuresOf(Datum<String, String> datum){
-		Set<Integer> featureIndices = new HashSet<Integer>();
-		for(String feature : datum.asFeatures()){
-			int index = featureIndex.indexOf(feature);
+	static long datumsPerSecond(int datums, long nanos){
+		return nanos > 0 ? (long) (datums * 1e9 / nanos) : 0;
+	}
+	
+	/*
+	 * Packs the dataset for training, mapping each of its features to
+	 * a weight id once per feature rather than once per occurrence.
+	 * Features that aren't kept (if kept isn't null) are left out.
+	 */
+	private PackedDataset pack(Dataset<String, String> dataset, boolean[] kept){
+		Index<String> datasetFeatures = dataset.featureIndex();
+		int[] featureIds = new int[datasetFeatures.size()];
+		for(int i = 0; i < featureIds.length; i++){
+			if (kept != null && !kept[i])
+				featureIds[i] = -1;
+			else
+				featureIds[i] = isHashed() ? FeatureHasher.bucket(datasetFeatures.get(i), hashBits) : featureIndex.indexOf(datasetFeatures.get(i));
+		}
+		
+		Index<String> datasetLabels = dataset.labelIndex();
+		int[] labelIds = new int[datasetLabels.size()];
+		for(int i = 0; i < labelIds.length; i++)
+			labelIds[i] = labelIndex.indexOf(datasetLabels.get(i));
+		
+		return new PackedDataset(dataset, featureIds, labelIds);
+	}
+	
+	/*
+	 * The ids of the known features of a datum, sorted and without duplicates.
+	 */
+	private int[] featuresOf(Collection<String> features){
+		int[] featureIndices = new int[features.size()];
+		int numIndices = 0;
+		for(String feature : features){
+			int index = isHashed() ? FeatureHasher.bucket(feature, hashBits) :
+				featureDictionary != null ? featureDictionary.indexOf(feature) : featureIndex.indexOf(feature);
 			if (index >= 0)
-				featureIndices.add(index);
+				featureIndices[numIndices++] = index;
 		}
 		
-		return featureIndices;
+		return sortedUnique(featureIndices, numIndices);
 	}
 	
-	private String argMaxDotProduct(Set<Integer> exampleFeatureIndices){
-		double maxDotProduct = Double.NEGATIVE_INFINITY;
-		int argMax = -1;
-		for(int i = 0; i < zWeights.length; i++){
-			double dotProduct = zWeights[i].dotProduct(exampleFeatureIndices);
-			if (dotProduct > maxDotProduct){
-				maxDotProduct = dotProduct;
-				argMax = i;
-			}
+	/*
+	 * Puts the ids of the known features with the given FeatureHasher keys in
+	 * featureIndices, sorted and without duplicates, and returns how many there are.
+	 */
+	private int featuresOf(long[] featureKeys, int count, int[] featureIndices){
+		int numIndices = 0;
+		for(int k = 0; k < count; k++){
+			int index = featureIdOf(featureKeys[k]);
+			if (index >= 0)
+				featureIndices[numIndices++] = index;
 		}
 		
-		return labelIndex.get(argMax);
+		Arrays.sort(featureIndices, 0, numIndices);
+		int unique = 0;
+		for(int i = 0; i < numIndices; i++)
+			if (unique == 0 || featureIndices[i] != featureIndices[unique - 1])
+				featureIndices[unique++] = featureIndices[i];
+		return unique;
 	}
 	
-	private String argMaxAverageDotProduct(Set<Integer> exampleFeatureIndices){
-		double maxDotProduct = Double.NEGATIVE_INFINITY;
-		int argMax = -1;
-		for(int i = 0; i < zWeights.length; i++){
-			double dotProduct = zWeights[0].dotProduct(exampleFeatureIndices, zWeights[i].avgWeights);
-			if (dotProduct > maxDotProduct){
-				maxDotProduct = dotProduct;
-				argMax = i;
-			}
+	private int featureIdOf(long key){
+		if (isHashed())
+			return FeatureHasher.bucket(key, hashBits);
+		return featureDictionary.indexOf(key);
+	}
+	
+	static int[] sortedUnique(int[] indices, int length){
+		Arrays.sort(indices, 0, length);
+		int unique = 0;
+		for(int i = 0; i < length; i++)
+			if (unique == 0 || indices[i] != indices[unique - 1])
+				indices[unique++] = indices[i];
+		return unique == indices.length ? indices : Arrays.copyOf(indices, unique);
+	}
+	
+	/*
+	 * Scores of every label for a datum, by label index.
+	 */
+	private double[] labelScores(Datum<String, String> datum, boolean averaged){
+		double[] scores = new double[labelIndex.size()];
+		labelScores(datum.asFeatures(), averaged, scores);
+		return scores;
+	}
+	
+	private void labelScores(Collection<String> features, boolean averaged, double[] scores){
+		labelScores(featuresOf(features), averaged, scores);
+	}
+	
+	private void labelScores(int[] featureIndices, boolean averaged, double[] scores){
+		labelScores(featureIndices, featureIndices.length, averaged, scores);
+	}
+	
+	private void labelScores(int[] featureIndices, int count, boolean averaged, double[] scores){
+		if (compactWeights != null){
+			if (!averaged)
+				throw new IllegalStateException("an inference-only model has no training weights");
+			compactWeights.scores(featureIndices, 0, count, scores);
+		}
+		else
+			zWeights.scores(featureIndices, 0, count, averaged ? zWeights.avgWeights : zWeights.weights, scores);
+	}
+	
+	public int numLabels(){
+		return labelIndex.size();
+	}
+	
+	/*
+	 * Fills scores, which must have numLabels() entries, with the score of each
+	 * label id (see labelIndex) for a datum with the given features: what
+	 * scoresOf gives, without building a Counter.
+	 */
+	public void scores(Collection<String> features, double[] scores){
+		labelScores(features, true, scores);
+	}
+	
+	/*
+	 * scores for a datum given by the FeatureHasher keys of its features, the
+	 * first count of featureKeys, for callers that compute the keys without
+	 * building the feature strings (see FeatureHasher.KeyBuilder). Only for
+	 * models that findsFeaturesByKey. featureIds is scratch space for the
+	 * features' ids, with at least count entries, so scoring allocates nothing.
+	 */
+	public void scores(long[] featureKeys, int count, int[] featureIds, double[] scores){
+		if (!findsFeaturesByKey())
+			throw new IllegalStateException("model can't look features up by key");
+		labelScores(featureIds, featuresOf(featureKeys, count, featureIds), true, scores);
+	}
+	
+	/*
+	 * Whether features can be looked up by key (see scores(long[], int, int[], double[])):
+	 * true for hashed, compacted and mapped models. A model with a feature index
+	 * only looks up feature strings, so as not to keep a second table of its
+	 * features by key; compacted models have one instead of the strings.
+	 */
+	public boolean findsFeaturesByKey(){
+		return featureIndex == null;
+	}
+	
+	/*
+	 * The label ranked right after label by scores: labels are ranked by score,
+	 * highest first, and labels with the same score by id. The first label is
+	 * the one after -1; returns -1 after the last. Ranking the labels one at a
+	 * time like this takes O(numLabels) per label and no sorting, for callers
+	 * that usually stop after the first few.
+	 */
+	public static int nextBestLabel(double[] scores, int label){
+		double bound = label >= 0 ? scores[label] : Double.POSITIVE_INFINITY;
+		int next = -1;
+		for (int l = 0; l < scores.length; l++){
+			boolean ranksAfter = scores[l] < bound || (scores[l] == bound && l > label);
+			if (ranksAfter && (next < 0 || scores[l] > scores[next]))
+				next = l;
 		}
-		return labelIndex.get(argMax);
+		return next;
+	}
+	
+	/*
+	 * Puts the k best labels by scores in labels, ranked as by nextBestLabel,
+	 * and returns how many there are (fewer than k if there are fewer labels).
+	 */
+	public static int topLabels(double[] scores, int k, int[] labels){
+		int n = 0;
+		for (int label = nextBestLabel(scores, -1); label >= 0 && n < k; label = nextBestLabel(scores, label))
+			labels[n++] = label;
+		return n;
 	}
 	
 	public Counter<String> scoresOf(Datum<String, String> datum){
 		Counter<String> scores = new ClassicCounter<String>();
-		Set<Integer> featureCounts = featuresOf(datum);
-		for (int i = 0; i < labelIndex.size(); i++){
-			scores.incrementCount(labelIndex.get(i),
-					zWeights[0].dotProduct(featureCounts, zWeights[i].avgWeights));
-		}
+		double[] labelScores = labelScores(datum, true);
+		for (int i = 0; i < labelIndex.size(); i++)
+			scores.incrementCount(labelIndex.get(i), labelScores[i]);
 		return scores;
 	}
 	
 	public String trainingClassOf(Datum<String, String> datum){
-		return argMaxDotProduct(featuresOf(datum));
+		return labelIndex.get(WeightMatrix.argMax(labelScores(datum, false)));
 	}
 	
 	public String classOf(Datum<String, String> datum){
-		return argMaxAverageDotProduct(featuresOf(datum));
+		return labelIndex.get(WeightMatrix.argMax(labelScores(datum, true)));
+	}
+	
+	/*
+	 * The fraction of the dataset's datums that classOf labels correctly.
+	 */
+	public double accuracy(Dataset<String, String> dataset){
+		int correct = 0;
+		for(int i = 0; i < dataset.size(); i++){
+			Datum<String, String> datum = dataset.getDatum(i);
+			if (classOf(datum).equals(datum.label()))
+				correct++;
+		}
+		return dataset.size() > 0 ? (double) correct / dataset.size() : 0;
 	}
 
 }
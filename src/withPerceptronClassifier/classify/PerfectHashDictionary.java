@@ -0,0 +1,182 @@
+package withPerceptronClassifier.classify;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * A minimal perfect hash of a fixed set of feature strings, built by "hash and
+ * displace" (Belazzougui, Botelho and Dietzfelbinger, 2009) over their 64-bit
+ * FeatureHasher keys: each feature's key is split into two 32-bit hashes, the
+ * first picking its bucket, and each bucket gets a displacement that sends its
+ * features to free ids, trying the largest buckets first. A feature's id is then
+ * found from its key and its bucket's displacement alone, and the strings
+ * themselves aren't kept. Each id keeps the second hash of its feature as a
+ * fingerprint instead, so a string that isn't in the set is rejected except with
+ * probability 2^-32. Takes about 5 bytes per feature.
+ */
+class PerfectHashDictionary implements FeatureDictionary, Serializable {
+
+	private static final long serialVersionUID = 2L;	//1 hashed the feature strings rather than their keys; such dictionaries are rejected
+
+	private static final int FEATURES_PER_BUCKET = 4;
+	private static final int MAX_ATTEMPTS = 64;
+
+	private final int seed;
+	private final int[] displacements;	//per bucket
+	private final int[] fingerprints;	//per id
+
+	/*
+	 * A dictionary giving each of the features, which must be distinct, an id
+	 * from 0 to features.size() - 1.
+	 */
+	PerfectHashDictionary(List<String> features){
+		int size = features.size();
+		long[] keys = new long[size];
+		for (int i = 0; i < size; i++)
+			keys[i] = FeatureHasher.key(features.get(i));
+		fingerprints = new int[size];
+		displacements = new int[Math.max(1, (size + FEATURES_PER_BUCKET - 1) / FEATURES_PER_BUCKET)];
+
+		int attempt = 0;
+		while (!place(keys, seedOf(attempt))){
+			if (++attempt == MAX_ATTEMPTS)
+				throw new IllegalArgumentException("features aren't distinct or have the same key");
+		}
+		seed = seedOf(attempt);
+	}
+
+	private static int seedOf(int attempt){
+		return FeatureHasher.scramble(0x2545f491 + attempt);
+	}
+
+	/*
+	 * Finds displacements sending every feature, its key hashed with seed, to a
+	 * different id, filling in the fingerprints; false if some bucket can't be
+	 * placed, which happens when two features have the same key, or very rarely by chance.
+	 */
+	private boolean place(long[] keys, int seed){
+		int size = keys.length;
+		int[] hashes = new int[size];
+		int[] secondHashes = new int[size];
+		for (int i = 0; i < size; i++){
+			hashes[i] = hashOf(keys[i], seed);
+			secondHashes[i] = fingerprintOf(keys[i]);
+		}
+		int numBuckets = displacements.length;
+		//the last free id is found in size tries on average, so this many fail only by chance
+		int maxDisplacement = (int) Math.min(Integer.MAX_VALUE, Math.max(1 << 16, 64L * size));
+
+		//the features of each bucket, as a counting sort by bucket
+		int[] bucketStarts = new int[numBuckets + 1];
+		for (int hash : hashes)
+			bucketStarts[bucketOf(hash, numBuckets) + 1]++;
+		for (int b = 0; b < numBuckets; b++)
+			bucketStarts[b + 1] += bucketStarts[b];
+		int[] bucketHashes = new int[size];
+		int[] bucketFingerprints = new int[size];
+		int[] next = Arrays.copyOf(bucketStarts, numBuckets);
+		for (int i = 0; i < size; i++){
+			int k = next[bucketOf(hashes[i], numBuckets)]++;
+			bucketHashes[k] = hashes[i];
+			bucketFingerprints[k] = secondHashes[i];
+		}
+
+		//buckets from largest to smallest, again by counting sort
+		int maxBucketSize = 0;
+		for (int b = 0; b < numBuckets; b++)
+			maxBucketSize = Math.max(maxBucketSize, bucketStarts[b + 1] - bucketStarts[b]);
+		int[] sizeStarts = new int[maxBucketSize + 2];
+		for (int b = 0; b < numBuckets; b++)
+			sizeStarts[maxBucketSize - (bucketStarts[b + 1] - bucketStarts[b]) + 1]++;
+		for (int s = 0; s <= maxBucketSize; s++)
+			sizeStarts[s + 1] += sizeStarts[s];
+		int[] order = new int[numBuckets];
+		for (int b = 0; b < numBuckets; b++)
+			order[sizeStarts[maxBucketSize - (bucketStarts[b + 1] - bucketStarts[b])]++] = b;
+
+		boolean[] taken = new boolean[size];
+		int[] ids = new int[maxBucketSize];
+		for (int b : order){
+			int from = bucketStarts[b];
+			int to = bucketStarts[b + 1];
+			if (from == to)
+				break;	//the rest are empty too
+
+			int displacement = 0;
+			while (!fits(bucketHashes, bucketFingerprints, from, to, displacement, taken, ids)){
+				if (++displacement == maxDisplacement)
+					return false;
+			}
+			displacements[b] = displacement;
+			for (int k = from; k < to; k++){
+				taken[ids[k - from]] = true;
+				fingerprints[ids[k - from]] = bucketFingerprints[k];
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Whether displacement sends the features in [from, to) of a bucket to distinct
+	 * free ids, which are put in ids.
+	 */
+	private boolean fits(int[] hashes, int[] fingerprints, int from, int to, int displacement, boolean[] taken, int[] ids){
+		for (int k = from; k < to; k++){
+			int id = idOf(hashes[k], fingerprints[k], displacement, taken.length);
+			if (taken[id])
+				return false;
+			for (int j = from; j < k; j++)
+				if (ids[j - from] == id)
+					return false;
+			ids[k - from] = id;
+		}
+		return true;
+	}
+
+	/*
+	 * The two hashes of a key: each is a bijection of one half of the key, so
+	 * features with different keys have different pairs of hashes.
+	 */
+	private static int hashOf(long key, int seed){
+		return FeatureHasher.scramble((int) (key >>> 32) ^ seed);
+	}
+
+	private static int fingerprintOf(long key){
+		return (int) key;
+	}
+
+	private static int bucketOf(int hash, int numBuckets){
+		return reduce(hash, numBuckets);
+	}
+
+	private static int idOf(int hash, int fingerprint, int displacement, int size){
+		int h = FeatureHasher.scramble(fingerprint + displacement * 0x9e3779b9) ^ hash;
+		return reduce(FeatureHasher.scramble(h), size);
+	}
+
+	/*
+	 * Maps a hash into [0, n) by multiplying instead of dividing (Lemire's range reduction).
+	 */
+	private static int reduce(int hash, int n){
+		return (int) (((hash & 0xffffffffL) * n) >>> 32);
+	}
+
+	public int indexOf(String feature){
+		return indexOf(FeatureHasher.key(feature));
+	}
+
+	public int indexOf(long key){
+		if (fingerprints.length == 0)
+			return -1;
+		int hash = hashOf(key, seed);
+		int fingerprint = fingerprintOf(key);
+		int id = idOf(hash, fingerprint, displacements[bucketOf(hash, displacements.length)], fingerprints.length);
+		return fingerprints[id] == fingerprint ? id : -1;
+	}
+
+	public int size(){
+		return fingerprints.length;
+	}
+
+}
@@ -0,0 +1,67 @@
+package withPerceptronClassifier.classify;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Times the scoring kernels against each other on random integer weights
+ * (like the summed weights of a trained model) and random sorted feature ids,
+ * after a warm-up round per kernel, and checks that they agree on every datum.
+ *
+ * Arguments: [numFeatures] [featuresPerDatum] [numLabels ...]
+ */
+public class ScoringBenchmark {
+
+	private static final int DATUMS = 100000;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args){
+		int numFeatures = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int featuresPerDatum = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+		int[] labelCounts = { 2, 7, 22, 54 };
+		if (args.length > 2){
+			labelCounts = new int[args.length - 2];
+			for (int i = 2; i < args.length; i++)
+				labelCounts[i - 2] = Integer.parseInt(args[i]);
+		}
+
+		Random random = new Random(1);
+		int[] features = new int[DATUMS * featuresPerDatum];
+		for (int d = 0; d < DATUMS; d++){
+			for (int k = 0; k < featuresPerDatum; k++)
+				features[d * featuresPerDatum + k] = random.nextInt(numFeatures);
+			Arrays.sort(features, d * featuresPerDatum, (d + 1) * featuresPerDatum);
+		}
+
+		for (int numLabels : labelCounts){
+			double[] table = new double[numFeatures * numLabels];
+			for (int i = 0; i < table.length; i++)
+				table[i] = random.nextInt(2001) - 1000;
+
+			double[] scores = new double[numLabels];
+			double[] expected = new double[numLabels];
+			StringBuilder line = new StringBuilder(numLabels + " labels:");
+			for (ScoringKernel kernel : ScoringKernel.values()){
+				long nanos = 0;
+				for (int round = 0; round <= ROUNDS; round++){
+					long start = System.nanoTime();
+					for (int d = 0; d < DATUMS; d++)
+						kernel.scores(table, numLabels, features, d * featuresPerDatum, (d + 1) * featuresPerDatum, scores);
+					if (round > 0)	//round 0 warms up
+						nanos += System.nanoTime() - start;
+				}
+
+				for (int d = 0; d < DATUMS; d++){
+					ScoringKernel.PER_LABEL.scores(table, numLabels, features, d * featuresPerDatum, (d + 1) * featuresPerDatum, expected);
+					kernel.scores(table, numLabels, features, d * featuresPerDatum, (d + 1) * featuresPerDatum, scores);
+					if (!Arrays.equals(scores, expected))
+						throw new IllegalStateException(kernel + " disagrees with " + ScoringKernel.PER_LABEL + " on datum " + d);
+				}
+
+				line.append("\t" + kernel + " " + nanos / ROUNDS / DATUMS + " ns/datum");
+			}
+			System.out.println(line);
+		}
+	}
+
+}
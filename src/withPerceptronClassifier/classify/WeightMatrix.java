@@ -0,0 +1,265 @@
+package withPerceptronClassifier.classify;
+
+import java.util.Arrays;
+
+/*
+ * The weights of a multi-class perceptron in feature-major order: the
+ * weights of feature f for labels 0 .. numLabels - 1 are the contiguous
+ * block starting at f * numLabels. Scoring a datum reads one block per
+ * active feature and accumulates every label's score in a single pass,
+ * instead of visiting a separate array per label.
+ *
+ * avgWeights holds the sums of the weights over all training steps, which
+ * classification uses. While training it holds something else instead: for
+ * every weight, the sum of step * change over all of its changes, where steps
+ * are numbered from 1. Since each change counts in every later step, the sum
+ * of the weights over steps 1 .. n is (n + 1) * weight - that sum, which
+ * settle() computes once at the end. So a training step costs the same
+ * whatever the number of labels, and no per-weight timestamps are kept.
+ *
+ * The arrays may be longer than numFeatures * numLabels, since grow() makes
+ * room for new features by doubling.
+ */
+class WeightMatrix {
+
+	private static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+	static final ScoringKernel KERNEL = ScoringKernel.fromProperty();
+
+	int numFeatures;
+	int numLabels;
+
+	double[] weights;
+	double[] avgWeights;
+
+	private long steps = 0;	//training steps taken so far
+
+	WeightMatrix(int numFeatures, int numLabels){
+		checkSize(numFeatures, numLabels);
+		this.numFeatures = numFeatures;
+		this.numLabels = numLabels;
+		weights = new double[numFeatures * numLabels];
+		avgWeights = new double[numFeatures * numLabels];
+	}
+
+	/*
+	 * Starts training again from the current weights of start, which must have
+	 * this matrix's size, with sums of its own; used for the shards of parallel
+	 * training, which are reused from epoch to epoch.
+	 */
+	void reset(WeightMatrix start){
+		System.arraycopy(start.weights, 0, weights, 0, size());
+		System.arraycopy(start.weights, 0, avgWeights, 0, size());	//the starting weights aren't a change made in any step
+		steps = 0;
+	}
+
+	private WeightMatrix(int numFeatures, int numLabels, double[] weights, double[] avgWeights){
+		this.numFeatures = numFeatures;
+		this.numLabels = numLabels;
+		this.weights = weights;
+		this.avgWeights = avgWeights;
+	}
+
+	private static void checkSize(int numFeatures, int numLabels){
+		if ((long) numFeatures * numLabels > MAX_SIZE)
+			throw new IllegalArgumentException(numFeatures + " features x " + numLabels + " labels don't fit in one array");
+	}
+
+	/*
+	 * Turns the step sums into the sums of the weights over all steps taken.
+	 */
+	void settle(){
+		settle(steps);
+	}
+
+	void settle(long steps){
+		for (int i = 0; i < size(); i++)
+			avgWeights[i] = (steps + 1) * weights[i] - avgWeights[i];
+	}
+
+	/*
+	 * The reverse of settle, for training a settled matrix further: makes the
+	 * step sums such that settling after n more steps gives the current sums
+	 * plus the sums of the weights over those n steps, as if training had never
+	 * stopped. Steps are numbered from 1 again.
+	 */
+	void resume(){
+		for (int i = 0; i < size(); i++)
+			avgWeights[i] = weights[i] - avgWeights[i];
+		steps = 0;
+	}
+
+	/*
+	 * Makes room for new features and labels, whose weights start at zero.
+	 * New features are appended in place, doubling the arrays when they are
+	 * full, so adding features one at a time costs amortized O(numLabels) each;
+	 * new labels change the layout of every block and copy the whole matrix.
+	 */
+	void grow(int numFeatures, int numLabels){
+		checkSize(numFeatures, numLabels);
+		if (numLabels != this.numLabels){
+			int length = capacity(numFeatures * numLabels);
+			double[] grownWeights = new double[length];
+			double[] grownAvgWeights = new double[length];
+			for (int f = 0; f < this.numFeatures; f++){
+				System.arraycopy(weights, f * this.numLabels, grownWeights, f * numLabels, this.numLabels);
+				System.arraycopy(avgWeights, f * this.numLabels, grownAvgWeights, f * numLabels, this.numLabels);
+			}
+			weights = grownWeights;
+			avgWeights = grownAvgWeights;
+		}
+		else if (numFeatures * numLabels > weights.length){
+			int length = capacity(numFeatures * numLabels);
+			weights = Arrays.copyOf(weights, length);
+			avgWeights = Arrays.copyOf(avgWeights, length);
+		}
+		this.numFeatures = numFeatures;
+		this.numLabels = numLabels;
+	}
+
+	/*
+	 * An array length of at least size, and at least double the current one.
+	 */
+	private int capacity(int size){
+		return (int) Math.max(size, Math.min(MAX_SIZE, 2L * weights.length));
+	}
+
+	/*
+	 * Puts the sums of the weights over the steps taken so far in the avgWeights
+	 * of target, which must have this matrix's size, as settle() would, while
+	 * this matrix carries on training. target's weights are left as they are.
+	 */
+	void settleInto(WeightMatrix target){
+		for (int i = 0; i < size(); i++)
+			target.avgWeights[i] = (steps + 1) * weights[i] - avgWeights[i];
+	}
+
+	/*
+	 * Adds weight to label's weights for the features in [from, to) of featureIndices,
+	 * as a change made in the given step.
+	 */
+	void update(int[] featureIndices, int from, int to, int label, double weight, long step){
+		double stepWeight = step * weight;
+		for (int k = from; k < to; k++){
+			int i = featureIndices[k] * numLabels + label;
+			weights[i] += weight;
+			avgWeights[i] += stepWeight;
+		}
+	}
+
+	/*
+	 * One perceptron step on a datum with the features in [from, to): predicts
+	 * its label with the current weights and, if that is wrong, moves weight from
+	 * the predicted label to goldLabel. Returns whether the prediction was wrong.
+	 * scores is scratch space for the label scores.
+	 */
+	boolean train(int[] featureIndices, int from, int to, int goldLabel, double[] scores){
+		steps++;
+		scores(featureIndices, from, to, weights, scores);
+		int predictedLabel = argMax(scores);
+		boolean mistake = predictedLabel != goldLabel;
+		if (mistake){
+			update(featureIndices, from, to, predictedLabel, -1.0, steps);
+			update(featureIndices, from, to, goldLabel, 1.0, steps);
+		}
+		return mistake;
+	}
+
+	/*
+	 * Fills scores[label] with the dot product of the features in [from, to)
+	 * and that label's weights, taken from table (weights or avgWeights).
+	 */
+	void scores(int[] featureIndices, int from, int to, double[] table, double[] scores){
+		KERNEL.scores(table, numLabels, featureIndices, from, to, scores);
+	}
+
+	/*
+	 * The first label with the highest score.
+	 */
+	static int argMax(double[] scores){
+		double max = Double.NEGATIVE_INFINITY;
+		int argMax = -1;
+		for (int label = 0; label < scores.length; label++){
+			if (scores[label] > max){
+				max = scores[label];
+				argMax = label;
+			}
+		}
+		return argMax;
+	}
+
+	/*
+	 * Mixes the weights of [from, to) from shards that all started from this
+	 * matrix: the weights become the shards' weights averaged with mixingWeights,
+	 * and the shards' sums (after settle) are added to this one's.
+	 */
+	void mix(WeightMatrix[] shards, double[] mixingWeights, int from, int to){
+		for (int i = from; i < to; i++){
+			double mixed = 0;
+			double sum = 0;
+			for (int s = 0; s < shards.length; s++){
+				mixed += mixingWeights[s] * shards[s].weights[i];
+				sum += shards[s].avgWeights[i];
+			}
+			weights[i] = mixed;
+			avgWeights[i] += sum;
+		}
+	}
+
+	/*
+	 * A copy holding only the given rows (features), renumbered from 0.
+	 */
+	WeightMatrix rows(int[] rows){
+		WeightMatrix copy = new WeightMatrix(rows.length, numLabels);
+		for (int f = 0; f < rows.length; f++){
+			System.arraycopy(weights, rows[f] * numLabels, copy.weights, f * numLabels, numLabels);
+			System.arraycopy(avgWeights, rows[f] * numLabels, copy.avgWeights, f * numLabels, numLabels);
+		}
+		return copy;
+	}
+
+	/*
+	 * Whether every label's summed weight for feature f is within threshold of zero.
+	 */
+	boolean negligible(int f, double threshold){
+		for (int i = f * numLabels; i < (f + 1) * numLabels; i++)
+			if (Math.abs(avgWeights[i]) > threshold)
+				return false;
+		return true;
+	}
+
+	int size(){
+		return numFeatures * numLabels;
+	}
+
+	/*
+	 * Conversions from and to the per-label arrays models are saved as.
+	 */
+	static WeightMatrix fromLabelWeights(PerceptronClassifier.LabelWeights[] labelWeights){
+		int numLabels = labelWeights.length;
+		int numFeatures = labelWeights[0].avgWeights.length;
+		double[] weights = new double[numFeatures * numLabels];
+		double[] avgWeights = new double[numFeatures * numLabels];
+		for (int label = 0; label < numLabels; label++){
+			for (int f = 0; f < numFeatures; f++){
+				if (labelWeights[label].weights != null)
+					weights[f * numLabels + label] = labelWeights[label].weights[f];
+				avgWeights[f * numLabels + label] = labelWeights[label].avgWeights[f];
+			}
+		}
+		return new WeightMatrix(numFeatures, numLabels, weights, avgWeights);
+	}
+
+	PerceptronClassifier.LabelWeights[] toLabelWeights(){
+		PerceptronClassifier.LabelWeights[] labelWeights = new PerceptronClassifier.LabelWeights[numLabels];
+		for (int label = 0; label < numLabels; label++){
+			labelWeights[label] = new PerceptronClassifier.LabelWeights(numFeatures);
+			for (int f = 0; f < numFeatures; f++){
+				labelWeights[label].weights[f] = weights[f * numLabels + label];
+				labelWeights[label].avgWeights[f] = avgWeights[f * numLabels + label];
+			}
+		}
+		return labelWeights;
+	}
+
+}
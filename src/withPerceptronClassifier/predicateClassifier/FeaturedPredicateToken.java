@@ -2,6 +2,7 @@ package withPerceptronClassifier.predicateClassifier;
 import edu.stanford.nlp.ling.BasicDatum;
 import edu.stanford.nlp.ling.Datum;
 import edu.stanford.nlp.process.WordShapeClassifier;
+import util.Sentence;
 import util.Token;
 
 import java.util.*;
@@ -11,51 +12,46 @@ public class FeaturedPredicateToken extends Token{
 	private final boolean CHILD_INDICES_IN_FEATURES = false;
 	private final boolean CHILDREN_INDICES_FEATURE = false;
 	
-	protected List<Integer> childrenIndices = new ArrayList<Integer>();
-
-	private FeaturedPredicateToken prev2Token;
-	private FeaturedPredicateToken prevToken;
-	private FeaturedPredicateToken nextToken;
-	private FeaturedPredicateToken next2Token;
-	
-	private final String wordShape;
+	private String wordShape;	//computed on first use
 
 	private static final int wordShaper = WordShapeClassifier.WORDSHAPECHRIS2;
+	private static final String emptyWordShape = WordShapeClassifier.wordShape("", wordShaper);	//shape of nonexistent tokens
 	
-	private static FeaturedPredicateToken emptyToken = new FeaturedPredicateToken("", "",	//used as a placeholder for nonexistent tokens
-			"", "", "",
-			-1, -1, new ArrayList<FeaturedPredicateToken>());
-
-	public FeaturedPredicateToken(final String splitForm, String splitLemma,
-			String pposs, String deprel, String goldPredicateRole,
-			int parentIndex, int sentenceIndex, List<? extends FeaturedPredicateToken> sentenceTokens){
+	public FeaturedPredicateToken(Sentence sentence, int sentenceIndex,
+			List<? extends FeaturedPredicateToken> sentenceTokens){
 		
-		super(splitForm, splitLemma, pposs, deprel, goldPredicateRole,
-				parentIndex, sentenceIndex, sentenceTokens);
-
-		wordShape = WordShapeClassifier.wordShape(splitForm, wordShaper);	
+		super(sentence, sentenceIndex, sentenceTokens);
 	}
 	
-	public void updateAdjacentTokens(){
-		if (sentenceIndex > 0)
-			prevToken = (FeaturedPredicateToken) sentenceTokens.get(sentenceIndex - 1);
-		else
-			prevToken = emptyToken;
-
-		if (sentenceIndex > 1)
-			prev2Token = (FeaturedPredicateToken) sentenceTokens.get(sentenceIndex - 2);
-		else
-			prev2Token = emptyToken;
-
-		if (sentenceIndex < sentenceTokens.size() - 1)
-			nextToken = (FeaturedPredicateToken) sentenceTokens.get(sentenceIndex + 1);
-		else
-			nextToken = emptyToken;
-
-		if (sentenceIndex < sentenceTokens.size() - 2)
-			next2Token = (FeaturedPredicateToken) sentenceTokens.get(sentenceIndex + 2);
-		else
-			next2Token = emptyToken;	
+	/*
+	 * Neighboring tokens are read straight from the sentence;
+	 * positions outside of it read as empty strings.
+	 */
+	private boolean hasOffset(int offset){
+		int i = sentenceIndex + offset;
+		return i >= 0 && i < sentence.size();
+	}
+	
+	private String splitFormAt(int offset){
+		return hasOffset(offset) ? sentence.splitForm(sentenceIndex + offset) : "";
+	}
+	
+	private String splitLemmaAt(int offset){
+		return hasOffset(offset) ? sentence.splitLemma(sentenceIndex + offset) : "";
+	}
+	
+	private String ppossAt(int offset){
+		return hasOffset(offset) ? sentence.pposs(sentenceIndex + offset) : "";
+	}
+	
+	private String wordShapeAt(int offset){
+		return hasOffset(offset) ? ((FeaturedPredicateToken) sentenceTokens.get(sentenceIndex + offset)).wordShape() : emptyWordShape;
+	}
+	
+	private String wordShape(){
+		if (wordShape == null)
+			wordShape = WordShapeClassifier.wordShape(splitForm, wordShaper);
+		return wordShape;
 	}
 	
 	/*
@@ -67,15 +63,10 @@ public class FeaturedPredicateToken extends Token{
 		return !goldPredicateRole.equals("_");
 	}
 	
-	/*
-	 * Simply adds some index to this token's
-	 * list of its children's indices.
-	 */
-	public void addChild(int childIndex){
-		if (childIndex >= 0)
-			childrenIndices.add(childIndex);
+	public int numChildren(){
+		return sentence.childCount(sentenceIndex);
 	}
-
+	
 	/*
 	 * Features are used by the linear classifier to classify tokens.
 	 * Features are provided as strings in the following format:
@@ -97,7 +88,6 @@ public class FeaturedPredicateToken extends Token{
 	 * 
 	 */
 	public Collection<String> getFeatures() {
-		updateAdjacentTokens();
 		Collection<String> features = new ArrayList<String>();
 
 		features.addAll(getSplitLemmas());		//add split-lemma
@@ -106,7 +96,7 @@ public class FeaturedPredicateToken extends Token{
 
 		//features.addAll(getWordShapes());		//add word shape using Stanford's WordShapeClassifier
 
-		//features.add("numch|" +	childrenIndices.size());	//add number of children
+		//features.add("numch|" +	numChildren());	//add number of children
 
 		//features.addAll(getChildrenFeatures()); //add children features
 		
@@ -126,26 +116,26 @@ public class FeaturedPredicateToken extends Token{
 		Collection<String> wordShapes = new ArrayList<String>();
 		
 		//word shape unigrams
-		wordShapes.add("w-1|" + prevToken.wordShape);
-		wordShapes.add("w0|" + wordShape);
-		wordShapes.add("w1|" + nextToken.wordShape);
+		wordShapes.add("w-1|" + wordShapeAt(-1));
+		wordShapes.add("w0|" + wordShape());
+		wordShapes.add("w1|" + wordShapeAt(1));
 		
 		//word shape bigrams
 		wordShapes.add("w-10|" +
-				prevToken.wordShape + " " + wordShape);
+				wordShapeAt(-1) + " " + wordShape());
 		wordShapes.add("w01|" +
-				wordShape + " " + nextToken.wordShape);
+				wordShape() + " " + wordShapeAt(1));
 		
 		//word shape trigrams
 		wordShapes.add("w-210|" + 
-				prev2Token.wordShape + " " +
-				prevToken.wordShape + " " +
-				wordShape);
+				wordShapeAt(-2) + " " +
+				wordShapeAt(-1) + " " +
+				wordShape());
 		
 		wordShapes.add("w012|" + 
-				wordShape + " " +
-				nextToken.wordShape + " " +
-				next2Token.wordShape);
+				wordShape() + " " +
+				wordShapeAt(1) + " " +
+				wordShapeAt(2));
 		
 		return wordShapes;
 	}
@@ -160,8 +150,8 @@ public class FeaturedPredicateToken extends Token{
 	 */
 	private String getChildrenDifferences() {
 		StringBuilder s = new StringBuilder("chdif|");
-		for (Integer i : childrenIndices)
-			s.append((i - sentenceIndex) + " ");
+		for (int k = sentence.childrenStart(sentenceIndex); k < sentence.childrenEnd(sentenceIndex); k++)
+			s.append((sentence.child(k) - sentenceIndex) + " ");
 
 		return s.toString();
 	}
@@ -190,9 +180,9 @@ public class FeaturedPredicateToken extends Token{
 	 */
 	private Collection<String> getChildrenFeatures(){
 		Collection<String> childFeatures = new ArrayList<String>();
-		for (Integer i : childrenIndices){
+		for (int k = sentence.childrenStart(sentenceIndex); k < sentence.childrenEnd(sentenceIndex); k++){
 			//add child split-lemma
-			FeaturedPredicateToken child = (FeaturedPredicateToken) sentenceTokens.get(i);
+			FeaturedPredicateToken child = (FeaturedPredicateToken) sentenceTokens.get(sentence.child(k));
 			for (String s : child.getSplitLemmas()){
 				childFeatures.add("c" + 
 						s);
@@ -261,19 +251,19 @@ public class FeaturedPredicateToken extends Token{
 		List<String> ppossList = new LinkedList<String>();
 
 		//pposs unigrams
-		ppossList.add("p-1|"	+ prevToken.pposs);
+		ppossList.add("p-1|"	+ ppossAt(-1));
 		ppossList.add("p0|" + pposs);
-		ppossList.add("p1|"	+ nextToken.pposs);
+		ppossList.add("p1|"	+ ppossAt(1));
 
 		//pposs bigrams
 		ppossList.add("p-21|" +	//<i-2, i-1>
-				prev2Token.pposs + " " + prevToken.pposs);
+				ppossAt(-2) + " " + ppossAt(-1));
 		ppossList.add("p-10|" +		//<i-1, i>
-				prevToken.pposs + " " + pposs);
+				ppossAt(-1) + " " + pposs);
 		ppossList.add("p01|" +		//<i, i+1>
-				pposs + " " + nextToken.pposs);
+				pposs + " " + ppossAt(1));
 		ppossList.add("p12|" +	//<i, i+1>
-				nextToken.pposs + " " + next2Token.pposs);
+				ppossAt(1) + " " + ppossAt(2));
 		
 		return ppossList;
 
@@ -291,11 +281,11 @@ public class FeaturedPredicateToken extends Token{
 		List<String> splitForms = new LinkedList<String>();
 
 		//split-form unigrams
-		splitForms.add("f-2|" +	 prev2Token.splitForm);
-		splitForms.add("f-1|" + prevToken.splitForm);
+		splitForms.add("f-2|" +	 splitFormAt(-2));
+		splitForms.add("f-1|" + splitFormAt(-1));
 		splitForms.add("f0|" + splitForm);
-		splitForms.add("f1|" + nextToken.splitForm);
-		splitForms.add("f2|" + next2Token.splitForm);
+		splitForms.add("f1|" + splitFormAt(1));
+		splitForms.add("f2|" + splitFormAt(2));
 
 		return splitForms;
 
@@ -317,16 +307,16 @@ public class FeaturedPredicateToken extends Token{
 		List<String> splitLemmas = new LinkedList<String>();
 
 		//split-lemma unigrams
-		splitLemmas.add("l-1|" + prevToken.splitLemma);
+		splitLemmas.add("l-1|" + splitLemmaAt(-1));
 		splitLemmas.add("l0|" + splitLemma);
-		splitLemmas.add("l1|" + nextToken.splitLemma);
+		splitLemmas.add("l1|" + splitLemmaAt(1));
 
 
 		//split-lemma bigrams
 		splitLemmas.add("l-10|" +		//<i-1, i>
-				prevToken.splitLemma + " " + splitLemma);
+				splitLemmaAt(-1) + " " + splitLemma);
 		splitLemmas.add("l01|" +		//<i, i+1>
-				splitLemma + " " + nextToken.splitLemma);
+				splitLemma + " " + splitLemmaAt(1));
 
 		return splitLemmas;
 
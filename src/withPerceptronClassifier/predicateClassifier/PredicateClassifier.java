@@ -6,6 +6,8 @@ import java.util.List;
 
 
 import util.CorpusUtils;
+import util.Sentence;
+import util.TokenData;
 import withPerceptronClassifier.classify.PerceptronClassifier;
 
 import edu.stanford.nlp.classify.Dataset;
@@ -46,82 +48,58 @@ public class PredicateClassifier {
 	public static Dataset<String, String> dataSetFromCorpus(String corpusLoc)
 			throws NumberFormatException, IOException{
 
-		List<List<String[]>> sentences = CorpusUtils.sentenceDataFromCorpus(corpusLoc);
 		Dataset<String, String> dataset = new Dataset<String, String>();
-		List<FeaturedPredicateToken> sentenceTokens = new ArrayList<FeaturedPredicateToken>();
 
 		System.out.println("Generating dataset");
-		while(!sentences.isEmpty()){
-			List<String[]> sentence = sentences.remove(0);
-			for (String[] tokenData : sentence){
-				sentenceTokens.add(new FeaturedPredicateToken(	//make new token, add to list
-						tokenData[CorpusUtils.SPLIT_FORM_COLUMN],	//split_form
-						tokenData[CorpusUtils.SPLIT_LEMMA_COLUMN],	//split_lemma
-						tokenData[CorpusUtils.PPOSS_COLUMN],		//pposs
-						tokenData[CorpusUtils.DEPREL_COLUMN], 		//deprel
-						tokenData[CorpusUtils.PREDICATE_COLUMN],	//predicate role
-
-						Integer.parseInt(tokenData[CorpusUtils.PARENT_INDEX_COLUMN]) - 1,	//parent index
-						Integer.parseInt(tokenData[CorpusUtils.INDEX_COLUMN]) - 1, //this index
-						//offset by 1 because array indices are 0-based, not 1-based
-
-						sentenceTokens));		//list of sentence tokens	
-			}
-			
-			for (FeaturedPredicateToken t : sentenceTokens){ 
-				if (t.parentIndex >= 0){	//link parents to children
-					FeaturedPredicateToken parent = sentenceTokens.get(t.parentIndex);
-					parent.addChild(t.sentenceIndex);
+		CorpusUtils.SentenceReader<FeaturedPredicateToken> reader = sentences(corpusLoc).iterator();
+		try {
+			while (reader.hasNext()){
+				List<FeaturedPredicateToken> sentenceTokens = reader.next();
+				for (FeaturedPredicateToken t : sentenceTokens){	//add tokens to dataset
+					dataset.add(t.asDatum());
 				}
-				t.updateAdjacentTokens();
-			}
-
-			for (FeaturedPredicateToken t : sentenceTokens){	//add tokens to dataset
-				dataset.add(t.asDatum());
 			}
-			
-			sentenceTokens.clear();
-			
+		} finally {
+			reader.close();
 		}
 
 		return dataset;
 
 	}
 	
+	/*
+	 * Builds the tokens of one sentence from its corpus column data;
+	 * the tokens are views onto a shared Sentence.
+	 */
+	public static List<FeaturedPredicateToken> sentenceFromData(List<TokenData> sentenceData){
+		Sentence sentence = new Sentence(sentenceData);
+		List<FeaturedPredicateToken> sentenceTokens = new ArrayList<FeaturedPredicateToken>(sentence.size());
+		for (int i = 0; i < sentence.size(); i++)
+			sentenceTokens.add(new FeaturedPredicateToken(sentence, i, sentenceTokens));
+		
+		return sentenceTokens;
+	}
+	
+	/*
+	 * Streams the sentences of a corpus, one sentence in memory at a time.
+	 */
+	public static CorpusUtils.Corpus<FeaturedPredicateToken> sentences(String corpusLoc){
+		return CorpusUtils.sentences(corpusLoc, new CorpusUtils.SentenceConverter<FeaturedPredicateToken>(){
+			public List<FeaturedPredicateToken> convert(List<TokenData> sentenceData){
+				return sentenceFromData(sentenceData);
+			}
+		});
+	}
+	
 	public static List<List<FeaturedPredicateToken>> sentencesFromCorpus(String corpusLoc) throws IOException {
 
-		List<List<String[]>> sentenceData = CorpusUtils.sentenceDataFromCorpus(corpusLoc);
 		List<List<FeaturedPredicateToken>> sentences = new ArrayList<List<FeaturedPredicateToken>>();
-		List<FeaturedPredicateToken> sentenceTokens;
-
-		while(!sentenceData.isEmpty()){
-			List<String[]> sentence = sentenceData.remove(0);
-			sentenceTokens = new ArrayList<FeaturedPredicateToken>();
-			for (String[] tokenData : sentence){
-				sentenceTokens.add(new FeaturedPredicateToken(	//make new token, add to list
-						tokenData[CorpusUtils.SPLIT_FORM_COLUMN],	//split_form
-						tokenData[CorpusUtils.SPLIT_LEMMA_COLUMN],	//split_lemma
-						tokenData[CorpusUtils.PPOSS_COLUMN],		//pposs
-						tokenData[CorpusUtils.DEPREL_COLUMN], 		//deprel
-						tokenData[CorpusUtils.PREDICATE_COLUMN],	//predicate role
-
-						Integer.parseInt(tokenData[CorpusUtils.PARENT_INDEX_COLUMN]) - 1,	//parent index
-						Integer.parseInt(tokenData[CorpusUtils.INDEX_COLUMN]) - 1, //this index
-						//offset by 1 because array indices are 0-based, not 1-based
-
-						sentenceTokens));		//list of sentence tokens	
-			}
-			
-			for (FeaturedPredicateToken t : sentenceTokens){ 
-				if (t.parentIndex >= 0){	//link parents to children
-					FeaturedPredicateToken parent = sentenceTokens.get(t.parentIndex);
-					parent.addChild(t.sentenceIndex);
-				}
-				t.updateAdjacentTokens();
-			}
-			
-			sentences.add(sentenceTokens);
-			
+		CorpusUtils.SentenceReader<FeaturedPredicateToken> reader = sentences(corpusLoc).iterator();
+		try {
+			while (reader.hasNext())
+				sentences.add(reader.next());
+		} finally {
+			reader.close();
 		}
 
 		return sentences;